@@ -0,0 +1,83 @@
+package com.github.systemdir.gml.examples.example3;
+
+import com.github.systemdir.gml.GmlEdge;
+import com.github.systemdir.gml.GmlNode;
+import com.github.systemdir.gml.YedGmlReader;
+import com.github.systemdir.gml.YedGmlWriter;
+import com.github.systemdir.gml.examples.example1.ExampleGraphicsProvider;
+import com.github.systemdir.gml.model.NodeGraphicDefinition;
+import org.jgrapht.UndirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.SimpleGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.github.systemdir.gml.YedGmlWriter.PrintLabels.PRINT_VERTEX_LABELS;
+
+/**
+ * Lays out a graph while exporting it, reads the file back and writes it again. The nodes of the second file must
+ * keep the fractional positions of the layout and, like in the first file, have no size.
+ */
+public class RoundTrip {
+    public static void main(String[] args) throws IOException {
+        // a ring with a few chords
+        SimpleGraph<String, DefaultEdge> toDraw = new SimpleGraph<>(DefaultEdge.class);
+        int vertices = 40;
+        for (int i = 0; i < vertices; i++) {
+            toDraw.addVertex("v" + i);
+        }
+        for (int i = 0; i < vertices; i++) {
+            toDraw.addEdge("v" + i, "v" + (i + 1) % vertices);
+            if (i % 5 == 0) {
+                toDraw.addEdge("v" + i, "v" + (i + vertices / 2) % vertices);
+            }
+        }
+
+        YedGmlWriter<String, DefaultEdge, Object> writer
+                = new YedGmlWriter.Builder<String, DefaultEdge, Object>(new ExampleGraphicsProvider(), PRINT_VERTEX_LABELS)
+                .setForceLayout(100, 80)
+                .build();
+
+        new File("gml-output").mkdir();//create folder
+        Path laidOut = new File("gml-output" + File.separator + "example3.gml").toPath();
+        writer.export(laidOut, toDraw);
+
+        // write what was read, with the graphics read from the file
+        YedGmlReader.Result first = YedGmlReader.read(laidOut);
+        YedGmlWriter<GmlNode, GmlEdge, GmlNode> rewriter
+                = new YedGmlWriter.Builder<>(first.getGraphicsProvider(), PRINT_VERTEX_LABELS)
+                .setVertexLabelProvider(GmlNode::getLabel)
+                .build();
+        Path rewritten = new File("gml-output" + File.separator + "example3-rewritten.gml").toPath();
+        rewriter.export(rewritten, (UndirectedGraph<GmlNode, GmlEdge>) first.getGraph());
+
+        YedGmlReader.Result second = YedGmlReader.read(rewritten);
+        Map<String, NodeGraphicDefinition> secondGraphics = new HashMap<>();
+        for (GmlNode node : second.getGraph().vertexSet()) {
+            secondGraphics.put(node.getLabel(), node.getGraphics());
+        }
+        int fractional = 0;
+        for (GmlNode node : first.getGraph().vertexSet()) {
+            NodeGraphicDefinition graphics = node.getGraphics();
+            NodeGraphicDefinition rewrittenGraphics = secondGraphics.get(node.getLabel());
+            if (graphics.getX() == null || graphics.getWidth() != null) {
+                throw new IllegalStateException(node.getLabel() + " was not laid out as expected");
+            }
+            if (!Objects.equals(graphics, rewrittenGraphics)) {
+                throw new IllegalStateException("graphics of " + node.getLabel() + " changed by the round trip");
+            }
+            if (graphics.getX() % 1 != 0 || graphics.getY() % 1 != 0) {
+                fractional++;
+            }
+        }
+
+        System.out.println("Exported to: " + laidOut.toAbsolutePath() + " and " + rewritten.toAbsolutePath());
+        System.out.println(first.getGraph().vertexSet().size() + " node positions survived the round trip, "
+                + fractional + " of them fractional");
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.systemdir.gml.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+
+/**
+ * Runs the benchmarks with the GC profiler and prints ops/s and allocated bytes per exported element.
+ * <p>
+ * Accepts the usual JMH command line options, e.g. to only run the small graphs:
+ * {@code java -jar target/benchmarks.jar -p elements=1000,100000}
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ExportBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.printf("%-10s %-7s %-7s %-7s %-9s %14s %16s%n",
+                "elements", "labels", "groups", "shared", "directed", "ops/s", "bytes/element");
+        for (RunResult result : results) {
+            int elements = Integer.parseInt(result.getParams().getParam("elements"));
+            Result<?> allocated = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            System.out.printf("%-10d %-7s %-7s %-7s %-9s %14.3f %16s%n",
+                    elements,
+                    result.getParams().getParam("labels"),
+                    result.getParams().getParam("groups"),
+                    result.getParams().getParam("sharedDefinitions"),
+                    result.getParams().getParam("directed"),
+                    result.getPrimaryResult().getScore(),
+                    allocated != null ? String.format("%.1f", allocated.getScore() / elements) : "n/a");
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.systemdir.gml.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.OutputStream;
+
+/**
+ * Discards the written data, only counts it
+ */
+class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) {
+        count += len;
+    }
+
+    long getCount() {
+        return count;
+    }
+}
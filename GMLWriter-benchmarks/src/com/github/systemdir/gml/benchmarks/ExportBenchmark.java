@@ -0,0 +1,199 @@
+package com.github.systemdir.gml.benchmarks;
+
+import com.github.systemdir.gml.YedGmlWriter;
+import com.github.systemdir.gml.model.EdgeGraphicDefinition;
+import com.github.systemdir.gml.model.GraphicDefinition;
+import com.github.systemdir.gml.model.NodeGraphicDefinition;
+import com.github.systemdir.gml.model.YedGmlGraphicsProvider;
+import org.jetbrains.annotations.Nullable;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.Graph;
+import org.jgrapht.UndirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.SimpleDirectedGraph;
+import org.jgrapht.graph.SimpleGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.systemdir.gml.YedGmlWriter.PRINT_LABELS;
+import static com.github.systemdir.gml.YedGmlWriter.PRINT_NO_LABELS;
+
+/**
+ * Measures {@link YedGmlWriter#export} of a whole graph into a discarding stream.
+ * <p>
+ * One operation is one export. A graph of {@code elements} elements has half as many vertices and half as many
+ * edges. Run through {@link BenchmarkMain} to also get the allocated bytes per element.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+// the 10M element graphs need a large heap
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class ExportBenchmark {
+    private static final int GROUP_SIZE = 50;
+
+    /**
+     * Amount of vertices plus edges
+     */
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int elements;
+
+    @Param({"true", "false"})
+    public boolean labels;
+
+    @Param({"true", "false"})
+    public boolean groups;
+
+    /**
+     * true: the graphics provider returns the same definitions for all elements, false: a new definition per element
+     */
+    @Param({"true", "false"})
+    public boolean sharedDefinitions;
+
+    @Param({"true", "false"})
+    public boolean directed;
+
+    private Graph<Integer, DefaultEdge> graph;
+    private YedGmlWriter<Integer, DefaultEdge, Integer> writer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = createGraph(elements / 2, elements - elements / 2, directed);
+
+        YedGmlWriter.Builder<Integer, DefaultEdge, Integer> builder = new YedGmlWriter.Builder<>(
+                sharedDefinitions ? new SharedGraphicsProvider() : new PerElementGraphicsProvider(),
+                labels ? PRINT_LABELS : PRINT_NO_LABELS);
+        builder.setVertexLabelProvider(vertex -> "vertex " + vertex);
+        builder.setEdgeLabelProvider(edge -> "edge");
+        if (groups) {
+            builder.setGroups(createGroups(graph), group -> "group " + group);
+        }
+        writer = builder.build();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public long export() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        if (directed) {
+            writer.export(out, (DirectedGraph<Integer, DefaultEdge>) graph);
+        } else {
+            writer.export(out, (UndirectedGraph<Integer, DefaultEdge>) graph);
+        }
+        return out.getCount();
+    }
+
+    /**
+     * A ring with chords, so every vertex has edges
+     */
+    static Graph<Integer, DefaultEdge> createGraph(int vertices, int edges, boolean directed) {
+        Graph<Integer, DefaultEdge> graph = directed
+                ? new SimpleDirectedGraph<>(DefaultEdge.class)
+                : new SimpleGraph<>(DefaultEdge.class);
+        vertices = Math.max(vertices, 3);
+        for (int i = 0; i < vertices; i++) {
+            graph.addVertex(i);
+        }
+        int added = 0;
+        for (int step = 1; added < edges && step < vertices; step++) {
+            for (int i = 0; i < vertices && added < edges; i++) {
+                if (graph.addEdge(i, (i + step) % vertices) != null) {
+                    added++;
+                }
+            }
+        }
+        return graph;
+    }
+
+    static Map<Integer, Set<Integer>> createGroups(Graph<Integer, DefaultEdge> graph) {
+        // group ids are negative, so they do not collide with vertices
+        Map<Integer, Set<Integer>> groups = new HashMap<>();
+        for (Integer vertex : graph.vertexSet()) {
+            groups.computeIfAbsent(-1 - vertex / GROUP_SIZE, group -> new HashSet<>()).add(vertex);
+        }
+        return groups;
+    }
+
+    static class SharedGraphicsProvider implements YedGmlGraphicsProvider<Integer, DefaultEdge, Integer> {
+        private final NodeGraphicDefinition vertexDefinition = vertexDefinition();
+        private final EdgeGraphicDefinition edgeDefinition = edgeDefinition();
+        private final NodeGraphicDefinition groupDefinition = groupDefinition();
+
+        @Override
+        public NodeGraphicDefinition getVertexGraphics(Integer vertex) {
+            return vertexDefinition;
+        }
+
+        @Override
+        public EdgeGraphicDefinition getEdgeGraphics(DefaultEdge edge, Integer edgeSource, Integer edgeTarget) {
+            return edgeDefinition;
+        }
+
+        @Nullable
+        @Override
+        public NodeGraphicDefinition getGroupGraphics(Integer group, Set<Integer> groupElements) {
+            return groupDefinition;
+        }
+    }
+
+    static class PerElementGraphicsProvider implements YedGmlGraphicsProvider<Integer, DefaultEdge, Integer> {
+        @Override
+        public NodeGraphicDefinition getVertexGraphics(Integer vertex) {
+            return vertexDefinition();
+        }
+
+        @Override
+        public EdgeGraphicDefinition getEdgeGraphics(DefaultEdge edge, Integer edgeSource, Integer edgeTarget) {
+            return edgeDefinition();
+        }
+
+        @Nullable
+        @Override
+        public NodeGraphicDefinition getGroupGraphics(Integer group, Set<Integer> groupElements) {
+            return groupDefinition();
+        }
+    }
+
+    static NodeGraphicDefinition vertexDefinition() {
+        return new NodeGraphicDefinition.Builder()
+                .setFill(Color.yellow)
+                .setForm(NodeGraphicDefinition.Form.roundrectangle)
+                .setFontStyle(GraphicDefinition.FontStyle.ITALIC)
+                .setLabelColour(Color.darkGray)
+                .build();
+    }
+
+    static EdgeGraphicDefinition edgeDefinition() {
+        return new EdgeGraphicDefinition.Builder()
+                .setTargetArrow(EdgeGraphicDefinition.ArrowType.DELTA)
+                .setLineType(GraphicDefinition.LineType.DASHED)
+                .build();
+    }
+
+    static NodeGraphicDefinition groupDefinition() {
+        return new NodeGraphicDefinition.Builder()
+                .setFill(Color.lightGray)
+                .setLineType(GraphicDefinition.LineType.DOTTED)
+                .build();
+    }
+}
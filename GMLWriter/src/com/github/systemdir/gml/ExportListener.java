@@ -0,0 +1,44 @@
+package com.github.systemdir.gml;
+
+/**
+ * Receives the progress and the statistics of a single export, see
+ * {@link YedGmlWriter.Builder#setExportListener(java.util.function.Supplier)}.
+ * <p>
+ * All methods are called on the thread running the export, or for a push based export on the thread calling the
+ * {@link YedGmlWriter.ExportSession} method. Push based exports have no phases, only
+ * {@link #exportStarted(boolean)} and {@link #exportFinished(ExportStatistics)} or
+ * {@link #exportFailed(Throwable)} are called.
+ */
+public interface ExportListener {
+
+    /**
+     * Called before the header is written
+     *
+     * @param directed true if the graph is directed
+     */
+    default void exportStarted(boolean directed) {
+    }
+
+    default void phaseStarted(ExportPhase phase) {
+    }
+
+    /**
+     * @param phase the finished phase
+     * @param elements amount of elements handled by the phase, e.g. written vertices
+     * @param nanos wall clock time of the phase
+     */
+    default void phaseFinished(ExportPhase phase, long elements, long nanos) {
+    }
+
+    /**
+     * Called once the GML file is complete and flushed
+     */
+    default void exportFinished(ExportStatistics statistics) {
+    }
+
+    /**
+     * Called instead of {@link #exportFinished(ExportStatistics)} when the export fails
+     */
+    default void exportFailed(Throwable failure) {
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.systemdir.gml;
+
+/**
+ * The steps of a graph export, reported to an {@link ExportListener} in this order.
+ */
+public enum ExportPhase {
+    /**
+     * Ids are assigned in vertex iteration order before anything is rendered. A parallel export assigns the
+     * group and edge ids here as well.
+     */
+    ID_ASSIGNMENT,
+    /**
+     * The vertices are positioned, only for exports with a layout, see {@link YedGmlWriter.Builder#setForceLayout}
+     */
+    LAYOUT,
+    VERTICES,
+    GROUPS,
+    EDGES
+}
@@ -0,0 +1,100 @@
+package com.github.systemdir.gml;
+
+/**
+ * Counters and timings of a completed export, see {@link ExportListener}.
+ * <p>
+ * Provider times are summed over all threads, so they can exceed the wall clock time of a parallel export.
+ */
+public final class ExportStatistics {
+    private final long vertices;
+    private final long groups;
+    private final long edges;
+    private final long bytesWritten;
+    private final long[] phaseNanos;
+    private final long graphicsProviderNanos;
+    private final long labelProviderNanos;
+    private final long totalNanos;
+
+    ExportStatistics(long vertices, long groups, long edges, long bytesWritten, long[] phaseNanos,
+                     long graphicsProviderNanos, long labelProviderNanos, long totalNanos) {
+        this.vertices = vertices;
+        this.groups = groups;
+        this.edges = edges;
+        this.bytesWritten = bytesWritten;
+        this.phaseNanos = phaseNanos.clone();
+        this.graphicsProviderNanos = graphicsProviderNanos;
+        this.labelProviderNanos = labelProviderNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * @return amount of written vertices, without the vertices which are groups
+     */
+    public long getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @return amount of written group nodes
+     */
+    public long getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return amount of written edges
+     */
+    public long getEdges() {
+        return edges;
+    }
+
+    /**
+     * @return amount of GML bytes passed to the output, before compression
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return wall clock time of the phase, 0 for push based exports
+     */
+    public long getPhaseNanos(ExportPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return time spent inside the {@link com.github.systemdir.gml.model.YedGmlGraphicsProvider} callbacks
+     */
+    public long getGraphicsProviderNanos() {
+        return graphicsProviderNanos;
+    }
+
+    /**
+     * @return time spent inside the vertex, edge and group label functions
+     */
+    public long getLabelProviderNanos() {
+        return labelProviderNanos;
+    }
+
+    /**
+     * @return wall clock time from the start of the export until the output is flushed
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ExportStatistics{vertices=").append(vertices)
+                .append(", groups=").append(groups)
+                .append(", edges=").append(edges)
+                .append(", bytesWritten=").append(bytesWritten);
+        for (ExportPhase phase : ExportPhase.values()) {
+            sb.append(", ").append(phase).append("=").append(phaseNanos[phase.ordinal()] / 1_000_000).append("ms");
+        }
+        return sb.append(", graphicsProvider=").append(graphicsProviderNanos / 1_000_000).append("ms")
+                .append(", labelProvider=").append(labelProviderNanos / 1_000_000).append("ms")
+                .append(", total=").append(totalNanos / 1_000_000).append("ms}")
+                .toString();
+    }
+}
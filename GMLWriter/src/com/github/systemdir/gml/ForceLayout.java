@@ -0,0 +1,630 @@
+package com.github.systemdir.gml;
+
+import com.github.systemdir.gml.model.ObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jgrapht.Graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+/**
+ * Force directed layout of the vertices of an export, see {@link YedGmlWriter.Builder#setForceLayout}.
+ * <p>
+ * Fruchterman-Reingold forces: vertices connected by an edge attract each other, all vertices repel each other.
+ * The repulsion is approximated by a Barnes-Hut quadtree, so an iteration costs O(n log n) instead of O(n^2).
+ * Grouped vertices are in addition pulled towards the center of their group and, less, of its ancestors, so the
+ * members of a group form a cluster which the group node is placed around.
+ * <p>
+ * Positions, tree and adjacency are primitive arrays indexed by vertex. The forces are computed in parallel
+ * chunks of vertices which only read the positions of the last iteration, so the result does not depend on the
+ * amount of threads: the same graph is always laid out the same.
+ */
+final class ForceLayout {
+    // yED's default node size, group bounds leave this much room around a member
+    private static final double NODE_SIZE = 30;
+    // a cell is approximated by its center of mass if its size is less than THETA times the distance to it
+    private static final double THETA = 1.0;
+    // cells are not split deeper, vertices at (nearly) the same position share a leaf then
+    private static final int MAX_DEPTH = 48;
+    private static final double THETA2 = THETA * THETA;
+    private static final double GROUP_PULL = 0.5;
+    private static final double GRAVITY = 0.05;
+    private static final long SEED = 0x5eed;
+
+    // node index of the laid out vertices
+    @NotNull
+    private final ObjectIntHashMap<Object> indices;
+    private final int size;
+    @NotNull
+    private double[] x;
+    @NotNull
+    private double[] y;
+    // of the next iteration, swapped with x and y
+    @NotNull
+    private double[] nextX;
+    @NotNull
+    private double[] nextY;
+    // neighbors of node i are adjacency[adjacencyStart[i]] to adjacency[adjacencyStart[i + 1] - 1]
+    @NotNull
+    private final int[] adjacencyStart;
+    @NotNull
+    private final int[] adjacency;
+    // index of the group of a node in the hierarchy, -1 without group
+    @NotNull
+    private final int[] nodeGroups;
+    @Nullable
+    private final GroupHierarchy<?, ?> hierarchy;
+    // centers of the groups, recomputed every iteration
+    private double[] groupX;
+    private double[] groupY;
+    // min x, min y, max x, max y of every group including room for its members, empty if it has no node
+    private double[] groupBounds;
+
+    private final double edgeLength;
+    private final QuadTree tree;
+
+    private ForceLayout(ObjectIntHashMap<Object> indices, int size, int[] adjacencyStart, int[] adjacency,
+                        int[] nodeGroups, @Nullable GroupHierarchy<?, ?> hierarchy, double edgeLength) {
+        this.indices = indices;
+        this.size = size;
+        this.x = new double[size];
+        this.y = new double[size];
+        this.nextX = new double[size];
+        this.nextY = new double[size];
+        this.adjacencyStart = adjacencyStart;
+        this.adjacency = adjacency;
+        this.nodeGroups = nodeGroups;
+        this.hierarchy = hierarchy;
+        this.edgeLength = edgeLength;
+        this.tree = new QuadTree(size);
+        int groups = hierarchy != null ? hierarchy.size() : 0;
+        this.groupX = new double[groups];
+        this.groupY = new double[groups];
+    }
+
+    /**
+     * Lays out the vertices accepted by isNode. Classified groups of the vertices are discovered on the way.
+     *
+     * @param isNode accepts the vertices which are written as nodes
+     * @param edgeExported accepts the edges which are written, only edges between nodes are taken into account
+     * @param hierarchy the groups of the export, null without groups
+     * @param pool computes the forces
+     * @param chunkSize amount of vertices per task
+     * @param iterations amount of iterations, the more the closer the layout gets to its equilibrium
+     * @param edgeLength the preferred length of an edge
+     * @param identity true to tell vertices apart by identity
+     */
+    static <V, E> ForceLayout compute(Graph<V, E> g, Predicate<V> isNode, Predicate<E> edgeExported,
+                                      @Nullable GroupHierarchy<V, ?> hierarchy, ForkJoinPool pool, int chunkSize,
+                                      int iterations, double edgeLength, boolean identity) {
+        ObjectIntHashMap<Object> indices = new ObjectIntHashMap<>(identity, -1, g.vertexSet().size());
+        List<V> nodes = new ArrayList<>(g.vertexSet().size());
+        for (V vertex : g.vertexSet()) {
+            if (isNode.test(vertex) && indices.putIfAbsent(vertex, nodes.size()) < 0) {
+                nodes.add(vertex);
+            }
+        }
+        int size = nodes.size();
+
+        int[] nodeGroups = new int[size];
+        for (int i = 0; i < size; i++) {
+            nodeGroups[i] = hierarchy != null ? hierarchy.classify(nodes.get(i)) : -1;
+        }
+        if (hierarchy != null) {
+            // rejects cycles of classified groups
+            hierarchy.link();
+        }
+
+        // edges as pairs of node indices, both directions end up in the adjacency
+        int[] ends = new int[16];
+        int edges = 0;
+        int[] adjacencyStart = new int[size + 1];
+        for (E edge : g.edgeSet()) {
+            int source = indices.get(g.getEdgeSource(edge));
+            int target = indices.get(g.getEdgeTarget(edge));
+            if (source < 0 || target < 0 || source == target || !edgeExported.test(edge)) {
+                continue;
+            }
+            if (edges * 2 + 2 > ends.length) {
+                ends = Arrays.copyOf(ends, ends.length * 2);
+            }
+            ends[edges * 2] = source;
+            ends[edges * 2 + 1] = target;
+            edges++;
+            adjacencyStart[source + 1]++;
+            adjacencyStart[target + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            adjacencyStart[i + 1] += adjacencyStart[i];
+        }
+        int[] adjacency = new int[edges * 2];
+        int[] next = Arrays.copyOf(adjacencyStart, size);
+        for (int i = 0; i < edges; i++) {
+            int source = ends[i * 2];
+            int target = ends[i * 2 + 1];
+            adjacency[next[source]++] = target;
+            adjacency[next[target]++] = source;
+        }
+
+        ForceLayout layout = new ForceLayout(indices, size, adjacencyStart, adjacency, nodeGroups, hierarchy, edgeLength);
+        layout.place();
+        layout.run(pool, Math.max(1, chunkSize), iterations);
+        layout.finish();
+        return layout;
+    }
+
+    /**
+     * @return amount of laid out vertices
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return node index of the vertex, -1 if it was not laid out
+     */
+    int indexOf(@Nullable Object vertex) {
+        return indices.get(vertex);
+    }
+
+    /**
+     * @return center of the node
+     */
+    double x(int node) {
+        return x[node];
+    }
+
+    /**
+     * @return center of the node
+     */
+    double y(int node) {
+        return y[node];
+    }
+
+    /**
+     * @return true if the group has laid out members, so it has bounds
+     */
+    boolean hasBounds(int group) {
+        return group >= 0 && group < groupX.length && groupBounds[group * 4] <= groupBounds[group * 4 + 2];
+    }
+
+    double groupX(int group) {
+        return round((groupBounds[group * 4] + groupBounds[group * 4 + 2]) / 2);
+    }
+
+    double groupY(int group) {
+        return round((groupBounds[group * 4 + 1] + groupBounds[group * 4 + 3]) / 2);
+    }
+
+    double groupWidth(int group) {
+        return round(groupBounds[group * 4 + 2] - groupBounds[group * 4]);
+    }
+
+    double groupHeight(int group) {
+        return round(groupBounds[group * 4 + 3] - groupBounds[group * 4 + 1]);
+    }
+
+    /**
+     * Initial positions: every top level group gets a random spot and its nested groups spots close to it, the
+     * members are scattered around the spot of their group. Seeded, so every run starts the same.
+     */
+    private void place() {
+        Random random = new Random(SEED);
+        double side = edgeLength * Math.sqrt(size + 1);
+        int groups = groupX.length;
+        double[] spotX = new double[groups];
+        double[] spotY = new double[groups];
+        boolean[] placed = new boolean[groups];
+        int[] members = new int[groups];
+        for (int i = 0; i < groups; i++) {
+            placeGroup(i, random, side, spotX, spotY, placed);
+        }
+        for (int i = 0; i < size; i++) {
+            if (nodeGroups[i] >= 0) {
+                members[nodeGroups[i]]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int group = nodeGroups[i];
+            if (group >= 0) {
+                double radius = edgeLength * 2 * Math.sqrt(members[group]);
+                x[i] = spotX[group] + (random.nextDouble() - 0.5) * radius;
+                y[i] = spotY[group] + (random.nextDouble() - 0.5) * radius;
+            } else {
+                x[i] = (random.nextDouble() - 0.5) * side;
+                y[i] = (random.nextDouble() - 0.5) * side;
+            }
+        }
+    }
+
+    private void placeGroup(int group, Random random, double side, double[] spotX, double[] spotY, boolean[] placed) {
+        if (placed[group]) {
+            return;
+        }
+        placed[group] = true;
+        int parent = hierarchy.parent(group);
+        if (parent < 0) {
+            spotX[group] = (random.nextDouble() - 0.5) * side;
+            spotY[group] = (random.nextDouble() - 0.5) * side;
+            return;
+        }
+        placeGroup(parent, random, side, spotX, spotY, placed);
+        spotX[group] = spotX[parent] + (random.nextDouble() - 0.5) * edgeLength * 4;
+        spotY[group] = spotY[parent] + (random.nextDouble() - 0.5) * edgeLength * 4;
+    }
+
+    private void run(ForkJoinPool pool, int chunkSize, int iterations) {
+        double start = Math.max(edgeLength, edgeLength * Math.sqrt(size) / 10);
+        for (int iteration = 0; iteration < iterations && size > 1; iteration++) {
+            // cools down linearly, the last moves are small corrections
+            double temperature = start * (iterations - iteration) / iterations;
+            tree.build(x, y, size);
+            computeGroupCenters();
+            pool.invoke(new ForceTask(0, size, chunkSize, temperature));
+            double[] swap = x;
+            x = nextX;
+            nextX = swap;
+            swap = y;
+            y = nextY;
+            nextY = swap;
+        }
+    }
+
+    /**
+     * Centers of the groups, a group includes the nodes of its nested groups
+     */
+    private void computeGroupCenters() {
+        int groups = groupX.length;
+        if (groups == 0) {
+            return;
+        }
+        int[] counts = new int[groups];
+        Arrays.fill(groupX, 0);
+        Arrays.fill(groupY, 0);
+        for (int i = 0; i < size; i++) {
+            for (int group = nodeGroups[i]; group >= 0; group = hierarchy.parent(group)) {
+                groupX[group] += x[i];
+                groupY[group] += y[i];
+                counts[group]++;
+            }
+        }
+        for (int group = 0; group < groups; group++) {
+            if (counts[group] > 0) {
+                groupX[group] /= counts[group];
+                groupY[group] /= counts[group];
+            }
+        }
+    }
+
+    /**
+     * Moves node i by the forces acting on it, at most by temperature
+     *
+     * @param stack traversal stack of the tree, reused by the calls of a task
+     * @param force receives the repulsion, reused by the calls of a task
+     */
+    private void move(int i, double temperature, int[] stack, double[] force) {
+        double xi = x[i];
+        double yi = y[i];
+        double k = edgeLength;
+        tree.repulsion(i, xi, yi, k * k, stack, force);
+        double fx = force[0];
+        double fy = force[1];
+
+        // attraction d^2 / k along the edges
+        for (int j = adjacencyStart[i]; j < adjacencyStart[i + 1]; j++) {
+            int neighbor = adjacency[j];
+            double dx = x[neighbor] - xi;
+            double dy = y[neighbor] - yi;
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            fx += dx * distance / k;
+            fy += dy * distance / k;
+        }
+
+        // linear pull towards the groups, weaker for every level up
+        double pull = GROUP_PULL;
+        for (int group = nodeGroups[i]; group >= 0; group = hierarchy.parent(group)) {
+            fx += (groupX[group] - xi) * pull;
+            fy += (groupY[group] - yi) * pull;
+            pull /= 2;
+        }
+
+        // keeps components from drifting apart
+        fx -= xi * GRAVITY;
+        fy -= yi * GRAVITY;
+
+        double length = Math.sqrt(fx * fx + fy * fy);
+        if (length > temperature) {
+            fx = fx / length * temperature;
+            fy = fy / length * temperature;
+        }
+        nextX[i] = xi + fx;
+        nextY[i] = yi + fy;
+    }
+
+    /**
+     * Moves the layout to positive coordinates, rounds them and computes the bounds of the groups
+     */
+    private void finish() {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            x[i] = round(x[i] - minX + NODE_SIZE);
+            y[i] = round(y[i] - minY + NODE_SIZE);
+        }
+
+        int groups = groupX.length;
+        groupBounds = new double[groups * 4];
+        for (int group = 0; group < groups; group++) {
+            groupBounds[group * 4] = Double.POSITIVE_INFINITY;
+            groupBounds[group * 4 + 1] = Double.POSITIVE_INFINITY;
+            groupBounds[group * 4 + 2] = Double.NEGATIVE_INFINITY;
+            groupBounds[group * 4 + 3] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = 0; i < size; i++) {
+            // every level of nesting leaves room around the level below
+            double margin = NODE_SIZE;
+            for (int group = nodeGroups[i]; group >= 0; group = hierarchy.parent(group)) {
+                groupBounds[group * 4] = Math.min(groupBounds[group * 4], x[i] - margin);
+                groupBounds[group * 4 + 1] = Math.min(groupBounds[group * 4 + 1], y[i] - margin);
+                groupBounds[group * 4 + 2] = Math.max(groupBounds[group * 4 + 2], x[i] + margin);
+                groupBounds[group * 4 + 3] = Math.max(groupBounds[group * 4 + 3], y[i] + margin);
+                margin += NODE_SIZE / 2;
+            }
+        }
+    }
+
+    /**
+     * @return value rounded to one decimal, which keeps the output short
+     */
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    /**
+     * Moves the nodes from start to end, split into chunks
+     */
+    private final class ForceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+        private final double temperature;
+
+        private ForceTask(int start, int end, int chunkSize, double temperature) {
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.temperature = temperature;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > chunkSize) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ForceTask(start, middle, chunkSize, temperature),
+                        new ForceTask(middle, end, chunkSize, temperature));
+                return;
+            }
+            // the siblings of the path to the own leaf plus a descent to the maximum depth
+            int[] stack = new int[6 * MAX_DEPTH + 4];
+            double[] force = new double[2];
+            for (int i = start; i < end; i++) {
+                move(i, temperature, stack, force);
+            }
+        }
+    }
+
+    /**
+     * Barnes-Hut quadtree over the node positions, rebuilt every iteration into the same arrays.
+     * <p>
+     * A cell is either a leaf, holding no node, one node or at the maximum depth several nodes, or has four
+     * children at consecutive indices. Every cell knows the amount of nodes below it and the sum of their
+     * positions, so their center of mass.
+     */
+    private static final class QuadTree {
+        private static final int EMPTY = -1;
+        private static final int INNER = -2;
+        private static final int SHARED = -3;
+
+        // first of the four children, -1 for leaves
+        private int[] firstChild;
+        // -1 for the root
+        private int[] parent;
+        // the node of a leaf, or EMPTY, INNER or SHARED
+        private int[] body;
+        private int[] mass;
+        private double[] sumX;
+        private double[] sumY;
+        // center of mass, computed from the sums once the tree is built
+        private double[] centerX;
+        private double[] centerY;
+        // side length of the cell
+        private double[] cellSize;
+        private int cells;
+        // the leaf holding a node
+        private final int[] leafOf;
+
+        private QuadTree(int nodes) {
+            int capacity = Math.max(16, nodes * 2);
+            firstChild = new int[capacity];
+            parent = new int[capacity];
+            body = new int[capacity];
+            mass = new int[capacity];
+            sumX = new double[capacity];
+            sumY = new double[capacity];
+            centerX = new double[capacity];
+            centerY = new double[capacity];
+            cellSize = new double[capacity];
+            leafOf = new int[nodes];
+        }
+
+        void build(double[] x, double[] y, int nodes) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < nodes; i++) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            double side = Math.max(maxX - minX, maxY - minY) * 1.001 + 1e-6;
+            double rootX = (minX + maxX) / 2;
+            double rootY = (minY + maxY) / 2;
+
+            cells = 0;
+            addCell(-1, side);
+            for (int i = 0; i < nodes; i++) {
+                insert(i, x[i], y[i], rootX, rootY, side, x, y);
+            }
+            for (int cell = 0; cell < cells; cell++) {
+                if (mass[cell] > 0) {
+                    centerX[cell] = sumX[cell] / mass[cell];
+                    centerY[cell] = sumY[cell] / mass[cell];
+                }
+            }
+        }
+
+        private int addCell(int parentCell, double side) {
+            if (cells + 4 > firstChild.length) {
+                int capacity = firstChild.length * 2;
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                body = Arrays.copyOf(body, capacity);
+                mass = Arrays.copyOf(mass, capacity);
+                sumX = Arrays.copyOf(sumX, capacity);
+                sumY = Arrays.copyOf(sumY, capacity);
+                // filled once the tree is built
+                centerX = new double[capacity];
+                centerY = new double[capacity];
+                cellSize = Arrays.copyOf(cellSize, capacity);
+            }
+            int cell = cells++;
+            firstChild[cell] = -1;
+            parent[cell] = parentCell;
+            body[cell] = EMPTY;
+            mass[cell] = 0;
+            sumX[cell] = 0;
+            sumY[cell] = 0;
+            cellSize[cell] = side;
+            return cell;
+        }
+
+        private void insert(int node, double nodeX, double nodeY, double centerX, double centerY, double side,
+                            double[] x, double[] y) {
+            int cell = 0;
+            for (int depth = 0; ; depth++) {
+                mass[cell]++;
+                sumX[cell] += nodeX;
+                sumY[cell] += nodeY;
+                if (firstChild[cell] < 0) {
+                    int existing = body[cell];
+                    if (existing == EMPTY) {
+                        body[cell] = node;
+                        leafOf[node] = cell;
+                        return;
+                    }
+                    if (depth == MAX_DEPTH || existing == SHARED) {
+                        body[cell] = SHARED;
+                        leafOf[node] = cell;
+                        return;
+                    }
+                    // split the leaf and move its node down
+                    int first = cells;
+                    for (int c = 0; c < 4; c++) {
+                        addCell(cell, side / 2);
+                    }
+                    firstChild[cell] = first;
+                    body[cell] = INNER;
+                    int child = first + quadrant(x[existing], y[existing], centerX, centerY);
+                    body[child] = existing;
+                    mass[child] = 1;
+                    sumX[child] = x[existing];
+                    sumY[child] = y[existing];
+                    leafOf[existing] = child;
+                }
+                int quadrant = quadrant(nodeX, nodeY, centerX, centerY);
+                side /= 2;
+                centerX += (quadrant & 1) != 0 ? side / 2 : -side / 2;
+                centerY += (quadrant & 2) != 0 ? side / 2 : -side / 2;
+                cell = firstChild[cell] + quadrant;
+            }
+        }
+
+        private static int quadrant(double nodeX, double nodeY, double centerX, double centerY) {
+            return (nodeX >= centerX ? 1 : 0) | (nodeY >= centerY ? 2 : 0);
+        }
+
+        /**
+         * Sums the repulsion k^2 / d of all other nodes on node i into force
+         */
+        void repulsion(int i, double xi, double yi, double k2, int[] stack, double[] force) {
+            double fx = 0;
+            double fy = 0;
+            int top = 0;
+            int ownLeaf = leafOf[i];
+            // the cells containing the node are always opened, else the node would repel itself
+            for (int child = ownLeaf, cell = parent[ownLeaf]; cell >= 0; child = cell, cell = parent[cell]) {
+                int first = firstChild[cell];
+                for (int sibling = first; sibling < first + 4; sibling++) {
+                    if (sibling != child) {
+                        stack[top++] = sibling;
+                    }
+                }
+            }
+            stack[top++] = ownLeaf;
+            while (top > 0) {
+                int cell = stack[--top];
+                double cellMass = mass[cell];
+                double dx;
+                double dy;
+                if (cell != ownLeaf) {
+                    if (cellMass == 0) {
+                        continue;
+                    }
+                    dx = xi - centerX[cell];
+                    dy = yi - centerY[cell];
+                } else {
+                    // the node itself does not count
+                    if (--cellMass == 0) {
+                        continue;
+                    }
+                    dx = xi - (sumX[cell] - xi) / cellMass;
+                    dy = yi - (sumY[cell] - yi) / cellMass;
+                }
+                double distance2 = dx * dx + dy * dy;
+                int first = firstChild[cell];
+                if (first >= 0 && cellSize[cell] * cellSize[cell] >= THETA2 * distance2) {
+                    stack[top++] = first;
+                    stack[top++] = first + 1;
+                    stack[top++] = first + 2;
+                    stack[top++] = first + 3;
+                    continue;
+                }
+                if (distance2 < 1e-9) {
+                    // nodes at the same position are pushed apart in a direction given by the node index
+                    dx = (i & 1) != 0 ? 0.01 : -0.01;
+                    dy = (i & 2) != 0 ? 0.01 : -0.01;
+                    distance2 = 2e-4;
+                }
+                double scale = k2 * cellMass / distance2;
+                fx += dx * scale;
+                fy += dy * scale;
+            }
+            force[0] = fx;
+            force[1] = fy;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.systemdir.gml;
+
+import com.github.systemdir.gml.model.EdgeGraphicDefinition;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An edge read by {@link YedGmlReader}.
+ * <p>
+ * Edges are compared by identity, so parallel edges are kept apart.
+ */
+public final class GmlEdge {
+    private final boolean hasId;
+    private final long numericId;
+    // only set if the id is not numeric
+    @Nullable
+    private final String textId;
+    @NotNull
+    private final GmlNode source;
+    @NotNull
+    private final GmlNode target;
+    @Nullable
+    private final String label;
+    @Nullable
+    private final EdgeGraphicDefinition graphics;
+
+    GmlEdge(boolean hasId, long numericId, @Nullable String textId, @NotNull GmlNode source, @NotNull GmlNode target,
+            @Nullable String label, @Nullable EdgeGraphicDefinition graphics) {
+        this.hasId = hasId;
+        this.numericId = numericId;
+        this.textId = textId;
+        this.source = source;
+        this.target = target;
+        this.label = label;
+        this.graphics = graphics;
+    }
+
+    /**
+     * @return the id of the edge in the GML file, null if it has none (yED writes no edge ids)
+     */
+    @Nullable
+    public String getId() {
+        if (!hasId) {
+            return null;
+        }
+        return textId != null ? textId : Long.toString(numericId);
+    }
+
+    @NotNull
+    public GmlNode getSource() {
+        return source;
+    }
+
+    @NotNull
+    public GmlNode getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the label, or the text of the LabelGraphics yED writes; null if the edge has none
+     */
+    @Nullable
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return the graphics of the edge, null if it has none. Equal graphics are the same instance.
+     */
+    @Nullable
+    public EdgeGraphicDefinition getGraphics() {
+        return graphics;
+    }
+
+    @Override
+    public String toString() {
+        return label != null ? label : source + " -> " + target;
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.systemdir.gml;
+
+import com.github.systemdir.gml.model.NodeGraphicDefinition;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A node read by {@link YedGmlReader}, either a normal node or a group node.
+ * <p>
+ * Nodes are compared by identity, like the vertices of most jgrapht graphs.
+ */
+public final class GmlNode {
+    private final long numericId;
+    // only set if the id is not numeric
+    @Nullable
+    private final String textId;
+
+    @Nullable
+    private String label;
+    @Nullable
+    private NodeGraphicDefinition graphics;
+    @Nullable
+    private GmlNode group;
+    private boolean isGroup;
+    // false while the node was only referenced, e.g. by an edge written before the node
+    private boolean defined;
+
+    GmlNode(long numericId, @Nullable String textId) {
+        this.numericId = numericId;
+        this.textId = textId;
+    }
+
+    /**
+     * @return the id of the node in the GML file
+     */
+    @NotNull
+    public String getId() {
+        return textId != null ? textId : Long.toString(numericId);
+    }
+
+    /**
+     * @return the label, or the text of the LabelGraphics yED writes; null if the node has none
+     */
+    @Nullable
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return the graphics of the node, null if it has none. Equal graphics are the same instance.
+     */
+    @Nullable
+    public NodeGraphicDefinition getGraphics() {
+        return graphics;
+    }
+
+    /**
+     * @return the group node this node belongs to, null if it belongs to none
+     */
+    @Nullable
+    public GmlNode getGroup() {
+        return group;
+    }
+
+    /**
+     * @return true if this is a group node
+     */
+    public boolean isGroup() {
+        return isGroup;
+    }
+
+    void setLabel(@Nullable String label) {
+        this.label = label;
+    }
+
+    void setGraphics(@Nullable NodeGraphicDefinition graphics) {
+        this.graphics = graphics;
+    }
+
+    void setGroup(@Nullable GmlNode group) {
+        this.group = group;
+    }
+
+    void setIsGroup(boolean isGroup) {
+        this.isGroup = isGroup;
+    }
+
+    boolean isDefined() {
+        return defined;
+    }
+
+    void setDefined() {
+        this.defined = true;
+    }
+
+    @Override
+    public String toString() {
+        return label != null ? label : getId();
+    }
+}
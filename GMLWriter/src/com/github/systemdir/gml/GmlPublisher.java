@@ -0,0 +1,216 @@
+package com.github.systemdir.gml;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.Graph;
+import org.jgrapht.UndirectedGraph;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the GML of a graph export as {@link ByteBuffer}s, e.g. to stream it as HTTP response.
+ * <p>
+ * Rendering is driven by demand: each requested buffer renders elements until about 64KB of output are ready, so
+ * a slow subscriber never makes the export render ahead and the memory used stays constant. Every subscription
+ * runs an export of its own, with the ids, compression and providers of the writer. Cancelling a subscription
+ * abandons its export at the next element. The buffers are not reused, a subscriber may keep them.
+ * <p>
+ * Without executor the export renders on the thread requesting, otherwise on the executor, one task at a time.
+ */
+public class GmlPublisher<V, E, G> implements Flow.Publisher<ByteBuffer> {
+    @NotNull
+    private final YedGmlWriter<V, E, G> writer;
+    @NotNull
+    private final Graph<V, E> graph;
+    private final boolean directed;
+    @Nullable
+    private final Executor executor;
+
+    /**
+     * @param writer the writer whose configuration is used
+     * @param g the directed graph to be exported, must not change while subscriptions are running
+     * @param executor renders the export, null to render on the thread calling {@link Flow.Subscription#request}
+     */
+    public GmlPublisher(@NotNull YedGmlWriter<V, E, G> writer, @NotNull DirectedGraph<V, E> g, @Nullable Executor executor) {
+        this(writer, g, true, executor);
+    }
+
+    /**
+     * @param writer the writer whose configuration is used
+     * @param g the undirected graph to be exported, must not change while subscriptions are running
+     * @param executor renders the export, null to render on the thread calling {@link Flow.Subscription#request}
+     */
+    public GmlPublisher(@NotNull YedGmlWriter<V, E, G> writer, @NotNull UndirectedGraph<V, E> g, @Nullable Executor executor) {
+        this(writer, g, false, executor);
+    }
+
+    private GmlPublisher(YedGmlWriter<V, E, G> writer, Graph<V, E> g, boolean directed, @Nullable Executor executor) {
+        this.writer = writer;
+        this.graph = g;
+        this.directed = directed;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        ExportSubscription subscription = new ExportSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Collects the chunks written by the export
+     */
+    private static final class ChunkSink extends OutputStream {
+        // concurrent, as async output writes from its drain task
+        final Queue<ByteBuffer> chunks = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void write(int b) {
+            chunks.add(ByteBuffer.wrap(new byte[]{(byte) b}));
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) {
+            if (len > 0) {
+                chunks.add(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+            }
+        }
+    }
+
+    private final class ExportSubscription implements Flow.Subscription {
+        @NotNull
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final ChunkSink sink = new ChunkSink();
+        private final AtomicLong demand = new AtomicLong();
+        // serializes the emission: only the thread raising it from 0 emits, the others leave their work to it
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+        private volatile boolean cancelled;
+        @Nullable
+        private volatile Throwable invalidRequest;
+
+        // only used by the emitting thread
+        @Nullable
+        private YedGmlWriter<V, E, G>.SteppedExport export;
+        private boolean rendered;
+        private boolean done;
+
+        private ExportSubscription(@NotNull Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        private void signal() {
+            if (pendingSignals.getAndIncrement() != 0) {
+                return;
+            }
+            if (executor != null) {
+                executor.execute(this::emit);
+            } else {
+                emit();
+            }
+        }
+
+        private void emit() {
+            int signals = pendingSignals.get();
+            do {
+                emitDemanded();
+                signals = pendingSignals.addAndGet(-signals);
+            } while (signals != 0);
+        }
+
+        private void emitDemanded() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                finish(null, new CancellationException("subscription cancelled"));
+                return;
+            }
+            if (invalidRequest != null) {
+                finish(invalidRequest, invalidRequest);
+                return;
+            }
+            try {
+                while (demand.get() > 0 && !cancelled) {
+                    ByteBuffer chunk = nextChunk();
+                    if (chunk == null) {
+                        done = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(chunk);
+                }
+            } catch (IOException | RuntimeException e) {
+                // a failed export is aborted already, cancelling it again does nothing
+                finish(e, e);
+                return;
+            } catch (Error e) {
+                finish(null, e);
+                throw e;
+            }
+            if (cancelled) {
+                finish(null, new CancellationException("subscription cancelled"));
+            }
+        }
+
+        /**
+         * @return the next chunk of the export, rendering it if there is none yet. Null once the export is complete
+         */
+        @Nullable
+        private ByteBuffer nextChunk() throws IOException {
+            while (sink.chunks.isEmpty() && !rendered) {
+                if (export == null) {
+                    export = writer.steppedExport(sink, graph, directed);
+                }
+                rendered = !export.step();
+            }
+            return sink.chunks.poll();
+        }
+
+        /**
+         * Ends the subscription
+         *
+         * @param failure passed to the subscriber, null if it is not to be notified
+         * @param reason the export is abandoned with
+         */
+        private void finish(@Nullable Throwable failure, Throwable reason) {
+            done = true;
+            sink.chunks.clear();
+            if (export != null) {
+                export.cancel(reason);
+            }
+            if (failure != null) {
+                subscriber.onError(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.github.systemdir.gml;
+
+import com.github.systemdir.gml.io.GmlBuffer;
+import com.github.systemdir.gml.io.XmlWriter;
+import com.github.systemdir.gml.model.EdgeGraphicDefinition;
+import com.github.systemdir.gml.model.GraphicDefinition;
+import com.github.systemdir.gml.model.NodeGraphicDefinition;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.util.function.Function;
+
+import static com.github.systemdir.gml.io.GmlBuffer.ascii;
+
+/**
+ * Renders graphic definitions as yEd GraphML realizers, the content of the nodegraphics and edgegraphics data
+ * elements.
+ * <p>
+ * A realizer rendered once is kept as {@link Fragment}, which only lacks the label text of an element.
+ */
+final class GraphmlStyles {
+    private static final byte[] SHAPE_NODE = ascii("y:ShapeNode");
+    private static final byte[] PROXY_AUTO_BOUNDS_NODE = ascii("y:ProxyAutoBoundsNode");
+    private static final byte[] REALIZERS = ascii("y:Realizers");
+    private static final byte[] GROUP_NODE = ascii("y:GroupNode");
+    private static final byte[] GEOMETRY = ascii("y:Geometry");
+    private static final byte[] FILL = ascii("y:Fill");
+    private static final byte[] BORDER_STYLE = ascii("y:BorderStyle");
+    private static final byte[] NODE_LABEL = ascii("y:NodeLabel");
+    private static final byte[] SHAPE = ascii("y:Shape");
+    private static final byte[] STATE = ascii("y:State");
+    private static final byte[] BORDER_INSETS = ascii("y:BorderInsets");
+    private static final byte[] POLY_LINE_EDGE = ascii("y:PolyLineEdge");
+    private static final byte[] LINE_STYLE = ascii("y:LineStyle");
+    private static final byte[] ARROWS = ascii("y:Arrows");
+    private static final byte[] EDGE_LABEL = ascii("y:EdgeLabel");
+    private static final byte[] BEND_STYLE = ascii("y:BendStyle");
+
+    private static final byte[] ACTIVE = ascii("active");
+    private static final byte[] X = ascii("x");
+    private static final byte[] Y = ascii("y");
+    private static final byte[] WIDTH = ascii("width");
+    private static final byte[] HEIGHT = ascii("height");
+    private static final byte[] COLOR = ascii("color");
+    private static final byte[] TRANSPARENT = ascii("transparent");
+    private static final byte[] TYPE = ascii("type");
+    private static final byte[] SOURCE = ascii("source");
+    private static final byte[] TARGET = ascii("target");
+    private static final byte[] CLOSED = ascii("closed");
+    private static final byte[] SMOOTHED = ascii("smoothed");
+    private static final byte[] TOP = ascii("top");
+    private static final byte[] BOTTOM = ascii("bottom");
+    private static final byte[] LEFT = ascii("left");
+    private static final byte[] RIGHT = ascii("right");
+    private static final byte[] ALIGNMENT = ascii("alignment");
+    private static final byte[] FONT_FAMILY = ascii("fontFamily");
+    private static final byte[] FONT_SIZE = ascii("fontSize");
+    private static final byte[] FONT_STYLE = ascii("fontStyle");
+    private static final byte[] TEXT_COLOR = ascii("textColor");
+    private static final byte[] BACKGROUND_COLOR = ascii("backgroundColor");
+    private static final byte[] HAS_BACKGROUND_COLOR = ascii("hasBackgroundColor");
+    private static final byte[] HAS_LINE_COLOR = ascii("hasLineColor");
+    private static final byte[] MODEL_NAME = ascii("modelName");
+    private static final byte[] MODEL_POSITION = ascii("modelPosition");
+    private static final byte[] VISIBLE = ascii("visible");
+
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] ZERO = ascii("0");
+    private static final byte[] CENTER = ascii("center");
+    private static final byte[] DIALOG = ascii("Dialog");
+    private static final byte[] INTERNAL = ascii("internal");
+    private static final byte[] EIGHT_POS = ascii("eight_pos");
+    private static final byte[] CENTERED = ascii("centered");
+    private static final byte[] GROUP_LABEL_POSITION = ascii("t");
+    private static final byte[] NODE_LABEL_POSITION = ascii("c");
+
+    // yEd defaults for properties which are optional in a definition
+    private static final int DEFAULT_FONT_SIZE = 12;
+    private static final int DEFAULT_LINE_WIDTH = 1;
+    // size of yED's nodes without w and h
+    private static final double DEFAULT_NODE_SIZE = 30;
+
+    private static final byte[][] FORMS = encode(NodeGraphicDefinition.Form.values(), Enum::name);
+    private static final byte[][] LINE_TYPES = encode(GraphicDefinition.LineType.values(),
+            t -> t == GraphicDefinition.LineType.NORMAL ? "line" : t.name().toLowerCase());
+    private static final byte[][] FONT_STYLES = encode(GraphicDefinition.FontStyle.values(), t -> t.name().toLowerCase());
+    private static final byte[][] ARROW_TYPES = encode(EdgeGraphicDefinition.ArrowType.values(),
+            t -> t.getRepresentedBy() != null ? t.getRepresentedBy().toLowerCase() : "none");
+    private static final byte[][] LABEL_PLACEMENTS = encode(NodeGraphicDefinition.LabelPlacement.values(),
+            NodeGraphicDefinition.LabelPlacement::getPlacementString);
+
+    private GraphmlStyles() {
+    }
+
+    /**
+     * A rendered realizer. The label text of an element is inserted at labelOffset.
+     */
+    static final class Fragment {
+        @NotNull
+        private final byte[] xml;
+        // -1 if the realizer has no label
+        private final int labelOffset;
+
+        private Fragment(@NotNull byte[] xml, int labelOffset) {
+            this.xml = xml;
+            this.labelOffset = labelOffset;
+        }
+
+        /**
+         * @param label label text, ignored if the fragment was rendered without label
+         */
+        void appendTo(XmlWriter out, @Nullable String label) {
+            if (labelOffset < 0) {
+                out.raw(xml, 0, xml.length);
+                return;
+            }
+            out.raw(xml, 0, labelOffset);
+            out.buffer().appendXmlEscaped(label).append(xml, labelOffset, xml.length - labelOffset);
+        }
+    }
+
+    /**
+     * Renders the realizer of a node or group node for caching
+     */
+    static Fragment nodeFragment(NodeGraphicDefinition definition, boolean group, boolean printLabel) {
+        GmlBuffer buffer = new GmlBuffer(512);
+        int labelOffset = appendNode(new XmlWriter(buffer), definition, group, printLabel ? "" : null);
+        return new Fragment(buffer.toByteArray(), labelOffset);
+    }
+
+    /**
+     * Renders the realizer of an edge for caching
+     */
+    static Fragment edgeFragment(EdgeGraphicDefinition definition, boolean printLabel) {
+        GmlBuffer buffer = new GmlBuffer(256);
+        int labelOffset = appendEdge(new XmlWriter(buffer), definition, printLabel ? "" : null);
+        return new Fragment(buffer.toByteArray(), labelOffset);
+    }
+
+    /**
+     * Writes a y:ShapeNode, or a y:ProxyAutoBoundsNode for groups
+     *
+     * @param label label text, null to write no label
+     * @return buffer position right after the label text, -1 without label
+     */
+    static int appendNode(XmlWriter out, NodeGraphicDefinition definition, boolean group, @Nullable String label) {
+        if (group) {
+            out.start(PROXY_AUTO_BOUNDS_NODE).start(REALIZERS).attribute(ACTIVE, ZERO).start(GROUP_NODE);
+        } else {
+            out.start(SHAPE_NODE);
+        }
+
+        if (definition.getX() != null || definition.getY() != null
+                || definition.getWidth() != null || definition.getHeight() != null) {
+            double width = orDefault(definition.getWidth(), DEFAULT_NODE_SIZE);
+            double height = orDefault(definition.getHeight(), DEFAULT_NODE_SIZE);
+            // GML positions the center of a node, GraphML its upper left corner
+            out.start(GEOMETRY)
+                    .attribute(HEIGHT, height)
+                    .attribute(WIDTH, width)
+                    .attribute(X, orDefault(definition.getX(), 0) - width / 2)
+                    .attribute(Y, orDefault(definition.getY(), 0) - height / 2)
+                    .end();
+        }
+
+        out.start(FILL);
+        appendColor(out, COLOR, definition.getFill());
+        out.attribute(TRANSPARENT, definition.getFill().getAlpha() == 0 ? TRUE : FALSE).end();
+
+        out.start(BORDER_STYLE);
+        appendLine(out, definition);
+        out.end();
+
+        int labelOffset = -1;
+        if (label != null) {
+            out.start(NODE_LABEL);
+            appendFont(out, definition);
+            NodeGraphicDefinition.LabelPlacement placement = definition.getLabelPlacement();
+            if (placement == null) {
+                out.attribute(MODEL_NAME, INTERNAL).attribute(MODEL_POSITION, group ? GROUP_LABEL_POSITION : NODE_LABEL_POSITION);
+            } else {
+                // the first nine placements are inside of the node, the others around it
+                boolean inside = placement.ordinal() <= NodeGraphicDefinition.LabelPlacement.bottomRight.ordinal();
+                out.attribute(MODEL_NAME, inside ? INTERNAL : EIGHT_POS)
+                        .attribute(MODEL_POSITION, LABEL_PLACEMENTS[placement.ordinal()]);
+            }
+            out.text(label);
+            labelOffset = out.buffer().size();
+            out.end();
+        }
+
+        out.start(SHAPE).attribute(TYPE, FORMS[definition.getForm().ordinal()]).end();
+
+        if (group) {
+            out.start(STATE).attribute(CLOSED, FALSE).end();
+            if (definition.getTopBorderInset() != null || definition.getBottomBorderInset() != null
+                    || definition.getLeftBorderInset() != null || definition.getRightBorderInset() != null) {
+                out.start(BORDER_INSETS)
+                        .attribute(BOTTOM, inset(definition.getBottomBorderInset()))
+                        .attribute(LEFT, inset(definition.getLeftBorderInset()))
+                        .attribute(RIGHT, inset(definition.getRightBorderInset()))
+                        .attribute(TOP, inset(definition.getTopBorderInset()))
+                        .end();
+            }
+            out.end().end().end();
+        } else {
+            out.end();
+        }
+        return labelOffset;
+    }
+
+    /**
+     * Writes a y:PolyLineEdge
+     *
+     * @param label label text, null to write no label
+     * @return buffer position right after the label text, -1 without label
+     */
+    static int appendEdge(XmlWriter out, EdgeGraphicDefinition definition, @Nullable String label) {
+        out.start(POLY_LINE_EDGE);
+
+        out.start(LINE_STYLE);
+        appendLine(out, definition);
+        out.end();
+
+        out.start(ARROWS)
+                .attribute(SOURCE, ARROW_TYPES[definition.getSourceArrow().ordinal()])
+                .attribute(TARGET, ARROW_TYPES[definition.getTargetArrow().ordinal()])
+                .end();
+
+        int labelOffset = -1;
+        if (label != null) {
+            out.start(EDGE_LABEL);
+            appendFont(out, definition);
+            out.attribute(MODEL_NAME, CENTERED).attribute(MODEL_POSITION, CENTER);
+            out.text(label);
+            labelOffset = out.buffer().size();
+            out.end();
+        }
+
+        out.start(BEND_STYLE).attribute(SMOOTHED, FALSE).end();
+        out.end();
+        return labelOffset;
+    }
+
+    private static void appendLine(XmlWriter out, GraphicDefinition definition) {
+        appendColor(out, COLOR, definition.getLineColor());
+        Integer lineWidth = definition.getLineWidth();
+        out.attribute(TYPE, LINE_TYPES[definition.getLineType().ordinal()])
+                .attribute(WIDTH, (double) (lineWidth != null ? lineWidth : DEFAULT_LINE_WIDTH));
+    }
+
+    private static void appendFont(XmlWriter out, GraphicDefinition definition) {
+        Integer fontSize = definition.getFontSize();
+        GraphicDefinition.FontStyle fontStyle = definition.getFontStyle();
+        out.attribute(ALIGNMENT, CENTER)
+                .attribute(FONT_FAMILY, DIALOG)
+                .attribute(FONT_SIZE, fontSize != null ? fontSize : DEFAULT_FONT_SIZE)
+                .attribute(FONT_STYLE, FONT_STYLES[fontStyle != null ? fontStyle.ordinal() : GraphicDefinition.FontStyle.PLAIN.ordinal()]);
+        Color background = definition.getLabelBackground();
+        if (background != null) {
+            appendColor(out, BACKGROUND_COLOR, background);
+        } else {
+            out.attribute(HAS_BACKGROUND_COLOR, FALSE);
+        }
+        out.attribute(HAS_LINE_COLOR, FALSE);
+        appendColor(out, TEXT_COLOR, definition.getLabelColour() != null ? definition.getLabelColour() : Color.black);
+        out.attribute(VISIBLE, TRUE);
+    }
+
+    /**
+     * Writes #rrggbb, or #rrggbbaa for colours which are not opaque
+     */
+    private static void appendColor(XmlWriter out, byte[] name, Color color) {
+        int argb = color.getRGB();
+        int alpha = argb >>> 24;
+        if (alpha == 0xff) {
+            out.hexAttribute(name, argb, 3);
+        } else {
+            out.hexAttribute(name, (argb << 8) | alpha, 4);
+        }
+    }
+
+    private static double inset(@Nullable Double inset) {
+        return inset != null ? inset : 0;
+    }
+
+    private static double orDefault(@Nullable Double value, double defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    private static <T extends Enum<T>> byte[][] encode(T[] values, Function<T, String> representation) {
+        byte[][] encoded = new byte[values.length][];
+        for (T value : values) {
+            encoded[value.ordinal()] = ascii(representation.apply(value));
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,401 @@
+package com.github.systemdir.gml;
+
+import com.github.systemdir.gml.model.ObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Index of the groups of a writer, built once from the group mapping and the optional parent function.
+ * <p>
+ * Every group gets an index: first the groups of the mapping in its iteration order, then parents which have no
+ * vertices of their own in the order they are found. Parent, depth and children are kept in primitive arrays
+ * indexed by it, the group of a vertex in a primitive map, so the writer needs one lookup per vertex.
+ * <p>
+ * Immutable once built, concurrent reads are fine.
+ * <p>
+ * A classified hierarchy (see {@link #classified}) instead discovers its groups while the vertices are classified,
+ * one hierarchy per export. It keeps no map of the vertices, the group of a vertex is asked from the classifier and
+ * the members of all groups are collected in one pass over the vertices the first time members are iterated.
+ * Groups are only discovered by {@link #classify}, which must not run concurrently with other calls.
+ */
+final class GroupHierarchy<V, G> {
+    @NotNull
+    private final List<G> groups = new ArrayList<>();
+    @NotNull
+    private final List<Set<V>> members = new ArrayList<>();
+    // index of the parent group, -1 for top level groups
+    @NotNull
+    private int[] parents = new int[16];
+    // 0 for top level groups. Null until linked, or when groups were discovered since
+    @Nullable
+    private int[] depths;
+    // children as linked lists in index order, -1 terminated
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    @NotNull
+    private final ObjectIntHashMap<Object> groupIndices;
+    // index of the group of a vertex, the last group of the mapping containing it. Null if classified
+    @Nullable
+    private final ObjectIntHashMap<Object> vertexGroups;
+
+    // set if classified
+    @Nullable
+    private final Set<V> vertices;
+    @Nullable
+    private final Function<? super V, ? extends G> classifier;
+    @Nullable
+    private final Function<? super G, ? extends G> parentOf;
+    // members of the classified groups by index, collected on first use
+    @Nullable
+    private List<List<V>> classifiedMembers;
+
+    /**
+     * @param parentOf returns the parent of a group, null for top level groups. Null if groups are not nested.
+     * @throws IllegalArgumentException if a group is its own ancestor
+     */
+    GroupHierarchy(@NotNull Map<G, ? extends Set<V>> groupMapping, @Nullable Function<? super G, ? extends G> parentOf) {
+        this.groupIndices = new ObjectIntHashMap<>(false, -1, groupMapping.size());
+        this.vertexGroups = new ObjectIntHashMap<>(false, -1);
+        this.vertices = null;
+        this.classifier = null;
+        this.parentOf = null;
+        for (Map.Entry<G, ? extends Set<V>> group : groupMapping.entrySet()) {
+            int index = groups.size();
+            groupIndices.put(group.getKey(), index);
+            groups.add(group.getKey());
+            members.add(Collections.unmodifiableSet(group.getValue()));
+            for (V grouped : group.getValue()) {
+                vertexGroups.put(grouped, index);
+            }
+        }
+
+        // the list grows while parents without vertices are added
+        for (int i = 0; i < groups.size(); i++) {
+            G parent = parentOf != null ? parentOf.apply(groups.get(i)) : null;
+            int parentIndex = -1;
+            if (parent != null) {
+                parentIndex = groupIndices.get(parent);
+                if (parentIndex < 0) {
+                    parentIndex = groups.size();
+                    groupIndices.put(parent, parentIndex);
+                    groups.add(parent);
+                    members.add(Collections.emptySet());
+                }
+            }
+            setParent(i, parentIndex);
+        }
+        link();
+    }
+
+    private GroupHierarchy(@NotNull Set<V> vertices, @NotNull Function<? super V, ? extends G> classifier,
+                           @Nullable Function<? super G, ? extends G> parentOf) {
+        this.groupIndices = new ObjectIntHashMap<>(false, -1);
+        this.vertexGroups = null;
+        this.vertices = vertices;
+        this.classifier = classifier;
+        this.parentOf = parentOf;
+    }
+
+    /**
+     * A hierarchy without groups yet, which discovers them by {@link #classify}
+     *
+     * @param vertices the vertices of the graph, the members of the groups are collected from them
+     * @param classifier returns the group of a vertex, null for vertices without group
+     * @param parentOf returns the parent of a group, null for top level groups. Null if groups are not nested.
+     */
+    static <V, G> GroupHierarchy<V, G> classified(@NotNull Set<V> vertices,
+                                                  @NotNull Function<? super V, ? extends G> classifier,
+                                                  @Nullable Function<? super G, ? extends G> parentOf) {
+        return new GroupHierarchy<>(vertices, classifier, parentOf);
+    }
+
+    /**
+     * Classifies all vertices accepted by the filter, so every group with such a vertex is known
+     */
+    void classifyAll(@Nullable Predicate<? super V> vertexFilter) {
+        for (V vertex : vertices) {
+            if (vertexFilter == null || vertexFilter.test(vertex)) {
+                classify(vertex);
+            }
+        }
+    }
+
+    /**
+     * Looks up the group of a vertex, the group and its ancestors are added if they are new. For a hierarchy
+     * built from a mapping the same as {@link #groupOf}.
+     *
+     * @return index of the group containing the vertex, -1 if the vertex has no group
+     */
+    int classify(V vertex) {
+        if (classifier == null) {
+            return vertexGroups.get(vertex);
+        }
+        G group = classifier.apply(vertex);
+        if (group == null) {
+            return -1;
+        }
+        int index = groupIndices.get(group);
+        return index >= 0 ? index : discover(group);
+    }
+
+    private int discover(G group) {
+        int index = groups.size();
+        groupIndices.put(group, index);
+        groups.add(group);
+        members.add(new ClassifiedMembers(index));
+        depths = null;
+        // added before its parent, so a cycle ends at a known group
+        setParent(index, -1);
+        G parent = parentOf != null ? parentOf.apply(group) : null;
+        if (parent != null) {
+            int parentIndex = groupIndices.get(parent);
+            setParent(index, parentIndex >= 0 ? parentIndex : discover(parent));
+        }
+        return index;
+    }
+
+    private void setParent(int index, int parent) {
+        if (index >= parents.length) {
+            parents = Arrays.copyOf(parents, Math.max(index + 1, parents.length * 2));
+        }
+        parents[index] = parent;
+    }
+
+    /**
+     * Computes depths and children from the parents
+     *
+     * @throws IllegalArgumentException if a group is its own ancestor
+     */
+    void link() {
+        if (depths != null) {
+            return;
+        }
+        int size = groups.size();
+        int[] depths = new int[size];
+        Arrays.fill(depths, -1);
+        int[] path = new int[size];
+        for (int i = 0; i < size; i++) {
+            // walk up to a group of known depth, then assign the depths top down
+            int length = 0;
+            int j = i;
+            while (j >= 0 && depths[j] < 0) {
+                if (length == path.length) {
+                    throw new IllegalArgumentException("group hierarchy contains a cycle at " + groups.get(i));
+                }
+                path[length++] = j;
+                j = parents[j];
+            }
+            int depth = j >= 0 ? depths[j] : -1;
+            while (length > 0) {
+                depths[path[--length]] = ++depth;
+            }
+        }
+
+        firstChildren = new int[size];
+        nextSiblings = new int[size];
+        Arrays.fill(firstChildren, -1);
+        // backwards, so the children of a group are linked in index order
+        for (int i = size - 1; i >= 0; i--) {
+            int parent = parents[i];
+            nextSiblings[i] = parent >= 0 ? firstChildren[parent] : -1;
+            if (parent >= 0) {
+                firstChildren[parent] = i;
+            }
+        }
+        this.depths = depths;
+    }
+
+    /**
+     * @return amount of groups, including parents without vertices
+     */
+    int size() {
+        return groups.size();
+    }
+
+    /**
+     * @return true if groups are discovered by a classifier
+     */
+    boolean isClassified() {
+        return classifier != null;
+    }
+
+    /**
+     * @return all groups in index order
+     */
+    @NotNull
+    List<G> groups() {
+        return Collections.unmodifiableList(groups);
+    }
+
+    G group(int index) {
+        return groups.get(index);
+    }
+
+    /**
+     * @return the vertices of the group in the mapping, empty for parents without vertices
+     */
+    @NotNull
+    Set<V> members(int index) {
+        return members.get(index);
+    }
+
+    /**
+     * @return index of the parent group, -1 for top level groups
+     */
+    int parent(int index) {
+        return parents[index];
+    }
+
+    /**
+     * @return 0 for top level groups
+     */
+    int depth(int index) {
+        link();
+        return depths[index];
+    }
+
+    /**
+     * @return index of the top level group containing the group
+     */
+    int root(int index) {
+        while (parents[index] >= 0) {
+            index = parents[index];
+        }
+        return index;
+    }
+
+    /**
+     * @return index of the first child group, -1 if there is none
+     */
+    int firstChild(int index) {
+        link();
+        return firstChildren[index];
+    }
+
+    /**
+     * @return index of the next child group of the same parent, -1 if there is none
+     */
+    int nextSibling(int index) {
+        link();
+        return nextSiblings[index];
+    }
+
+    /**
+     * @return index of the group, -1 if the object is no group
+     */
+    int indexOf(@Nullable Object group) {
+        return groupIndices.get(group);
+    }
+
+    /**
+     * @return true if the object is a group of the mapping. Always false for a classified hierarchy, whose groups
+     * are not looked up among the vertices.
+     */
+    boolean isGroup(@Nullable Object object) {
+        return classifier == null && groupIndices.get(object) >= 0;
+    }
+
+    /**
+     * @return index of the group containing the vertex, -1 if the vertex has no group or its group was not
+     * discovered yet
+     */
+    int groupOf(@Nullable Object vertex) {
+        if (classifier == null) {
+            return vertexGroups.get(vertex);
+        }
+        @SuppressWarnings("unchecked")
+        G group = classifier.apply((V) vertex);
+        return group != null ? groupIndices.get(group) : -1;
+    }
+
+    /**
+     * For a hierarchy built from a mapping, a classified hierarchy only knows groups of exported vertices.
+     *
+     * @return groups which neither have a vertex accepted by the filter nor a child group which has one
+     */
+    @NotNull
+    Set<Object> emptyGroups(@NotNull Predicate<? super V> vertexFilter) {
+        boolean[] used = new boolean[groups.size()];
+        for (int i = 0; i < groups.size(); i++) {
+            if (used[i]) {
+                continue;
+            }
+            for (V member : members.get(i)) {
+                if (vertexFilter.test(member)) {
+                    // mark the group and its ancestors, up to one marked before
+                    for (int j = i; j >= 0 && !used[j]; j = parents[j]) {
+                        used[j] = true;
+                    }
+                    break;
+                }
+            }
+        }
+        Set<Object> empty = new HashSet<>();
+        for (int i = 0; i < groups.size(); i++) {
+            if (!used[i]) {
+                empty.add(groups.get(i));
+            }
+        }
+        return empty;
+    }
+
+    /**
+     * Collects the members of all classified groups in one pass over the vertices. Groups of the graphics
+     * provider may ask concurrently.
+     */
+    private synchronized List<List<V>> classifiedMembers() {
+        if (classifiedMembers == null || classifiedMembers.size() < groups.size()) {
+            List<List<V>> lists = new ArrayList<>(groups.size());
+            for (int i = 0; i < groups.size(); i++) {
+                lists.add(new ArrayList<>());
+            }
+            for (V vertex : vertices) {
+                int index = groupOf(vertex);
+                if (index >= 0) {
+                    lists.get(index).add(vertex);
+                }
+            }
+            classifiedMembers = lists;
+        }
+        return classifiedMembers;
+    }
+
+    /**
+     * Members of a classified group, collected when they are iterated first. Membership is answered by the
+     * classifier without collecting.
+     */
+    private final class ClassifiedMembers extends AbstractSet<V> {
+        private final int index;
+
+        private ClassifiedMembers(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return vertices.contains(o) && index == groupOf(o);
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return Collections.unmodifiableList(classifiedMembers().get(index)).iterator();
+        }
+
+        @Override
+        public int size() {
+            return classifiedMembers().get(index).size();
+        }
+    }
+}
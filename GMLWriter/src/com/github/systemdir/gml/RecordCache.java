@@ -0,0 +1,100 @@
+package com.github.systemdir.gml;
+
+import com.github.systemdir.gml.model.GraphicDefinition;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The rendered records of the last export, for incremental exports, see
+ * {@link YedGmlWriter.Builder#setIncremental(boolean)}.
+ * <p>
+ * Every record holds the gml of one element together with its fingerprint: the rendered ids (its own, its group,
+ * its endpoints), its label and its graphic definition. An export which finds the same fingerprint copies the gml
+ * instead of rendering it again. Records which were not used by an export are evicted when it completes.
+ * <p>
+ * Only one export at a time uses the cache, see {@link #acquire()}. Within that export the maps may be read and
+ * updated by several rendering threads.
+ */
+final class RecordCache {
+    // elements are told apart by equals, vertices, groups and edges each have their own records
+    final Map<Object, Record> vertices = new ConcurrentHashMap<>();
+    final Map<Object, Record> groups = new ConcurrentHashMap<>();
+    final Map<Object, Record> edges = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean inUse = new AtomicBoolean();
+    // incremented by every export, records of older generations are stale
+    private int generation;
+
+    /**
+     * Reserves the cache for an export
+     *
+     * @return false if another export is using the cache, which then has to render everything itself
+     */
+    boolean acquire() {
+        if (!inUse.compareAndSet(false, true)) {
+            return false;
+        }
+        generation++;
+        return true;
+    }
+
+    /**
+     * @param completed true if the export completed, only then records of elements which were not exported are
+     * evicted
+     */
+    void release(boolean completed) {
+        if (completed) {
+            int current = generation;
+            vertices.values().removeIf(record -> record.generation != current);
+            groups.values().removeIf(record -> record.generation != current);
+            edges.values().removeIf(record -> record.generation != current);
+        }
+        inUse.set(false);
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    static final class Record {
+        @NotNull
+        private final byte[] ids;
+        @Nullable
+        private final String label;
+        @Nullable
+        private final GraphicDefinition definition;
+        @NotNull
+        final byte[] gml;
+        // written by the export which last used the record
+        int generation;
+
+        Record(@NotNull byte[] ids, @Nullable String label, @Nullable GraphicDefinition definition, @NotNull byte[] gml, int generation) {
+            this.ids = ids;
+            this.label = label;
+            this.definition = definition;
+            this.gml = gml;
+            this.generation = generation;
+        }
+
+        /**
+         * @return true if the record was rendered from the same ids (given as bytes from..to), label and definition
+         */
+        boolean matches(byte[] ids, int from, int to, @Nullable String label, @Nullable GraphicDefinition definition) {
+            if (to - from != this.ids.length) {
+                return false;
+            }
+            for (int i = 0; i < this.ids.length; i++) {
+                if (this.ids[i] != ids[from + i]) {
+                    return false;
+                }
+            }
+            // definitions are usually the same instance, else equals compares their fields
+            return Objects.equals(definition, this.definition) && Objects.equals(label, this.label);
+        }
+    }
+}
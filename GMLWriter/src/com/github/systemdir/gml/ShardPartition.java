@@ -0,0 +1,267 @@
+package com.github.systemdir.gml;
+
+import com.github.systemdir.gml.model.ObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jgrapht.Graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Splits a graph into the shards of a sharded export, see {@link YedGmlWriter#exportShards}.
+ * <p>
+ * With groups, every top level group with exported members is a shard holding its nested groups, and the vertices
+ * without group form one more shard.
+ * Without groups the weakly connected components are found by a union-find over primitive vertex indices and
+ * packed into shards of at most maxShardSize vertices; a larger component stays whole, as splitting it would cut
+ * its edges. Edges between shards are left out of the shards and counted per pair of shards for the overview.
+ */
+final class ShardPartition<V, E, G> {
+
+    static final class Shard<V, E, G> {
+        final int index;
+        // the top level group of the shard, null for the ungrouped vertices or a pack of components
+        @Nullable
+        final G group;
+        // the group and its nested groups with exported members, parents first
+        final List<G> groups = new ArrayList<>();
+        final List<V> vertices = new ArrayList<>();
+        final List<E> edges = new ArrayList<>();
+        // vertices of the components assigned to the shard, some may not be added to vertices yet
+        private int plannedSize;
+
+        private Shard(int index, @Nullable G group) {
+            this.index = index;
+            this.group = group;
+        }
+
+        /**
+         * @return object the node of the shard in the overview gets its id from, the group if there is one
+         */
+        Object key() {
+            return group != null ? group : this;
+        }
+    }
+
+    /**
+     * The edges from one shard to another
+     */
+    static final class Link {
+        final int source;
+        final int target;
+        long count;
+
+        private Link(int source, int target) {
+            this.source = source;
+            this.target = target;
+        }
+    }
+
+    @NotNull
+    final List<Shard<V, E, G>> shards = new ArrayList<>();
+    // in order of the first edge between the shards
+    @NotNull
+    final List<Link> links = new ArrayList<>();
+    @NotNull
+    private final Map<Long, Link> linksByShards = new HashMap<>();
+    private final boolean directed;
+
+    private ShardPartition(boolean directed) {
+        this.directed = directed;
+    }
+
+    /**
+     * One shard per top level group with exported members, plus one for the exported vertices without group
+     *
+     * @param vertexExported accepts the vertices which are written, for groups the vertex of the group
+     * @param edgeExported accepts the edges which are written
+     */
+    static <V, E, G> ShardPartition<V, E, G> byGroups(Graph<V, E> g, GroupHierarchy<V, G> hierarchy,
+                                                      @Nullable Set<Object> emptyGroups,
+                                                      Predicate<V> vertexExported, Predicate<E> edgeExported,
+                                                      boolean directed, boolean identity) {
+        ShardPartition<V, E, G> partition = new ShardPartition<>(directed);
+        // shard by group index, -1 for empty groups
+        int[] groupShards = new int[hierarchy.size()];
+        Arrays.fill(groupShards, -1);
+        for (int i = 0; i < hierarchy.size(); i++) {
+            if (hierarchy.parent(i) < 0 && !isEmpty(hierarchy, i, emptyGroups)) {
+                Shard<V, E, G> shard = partition.addShard(hierarchy.group(i));
+                addGroups(hierarchy, i, emptyGroups, shard, groupShards);
+            }
+        }
+
+        ObjectIntHashMap<V> shardOf = new ObjectIntHashMap<>(identity, -1, g.vertexSet().size());
+        Shard<V, E, G> ungrouped = null;
+        for (V vertex : g.vertexSet()) {
+            int groupIndex = hierarchy.indexOf(vertex);
+            if (groupIndex >= 0) {
+                // written as group node in the shard of its top level group, edges to it belong there
+                int shard = groupShards[groupIndex];
+                if (shard >= 0) {
+                    shardOf.put(vertex, shard);
+                }
+                continue;
+            }
+            if (!vertexExported.test(vertex)) {
+                continue;
+            }
+            groupIndex = hierarchy.groupOf(vertex);
+            int shard = groupIndex >= 0 ? groupShards[groupIndex] : -1;
+            if (shard < 0) {
+                if (ungrouped == null) {
+                    ungrouped = partition.addShard(null);
+                }
+                shard = ungrouped.index;
+            }
+            partition.shards.get(shard).vertices.add(vertex);
+            shardOf.put(vertex, shard);
+        }
+
+        for (E edge : g.edgeSet()) {
+            if (edgeExported.test(edge)) {
+                partition.addEdge(edge, shardOf.get(g.getEdgeSource(edge)), shardOf.get(g.getEdgeTarget(edge)));
+            }
+        }
+        return partition;
+    }
+
+    /**
+     * Weakly connected components packed into shards of at most maxShardSize vertices, in order of their first
+     * vertex
+     *
+     * @param vertexExported accepts the vertices which are written
+     * @param edgeExported accepts the edges which are written, including both of their vertices
+     */
+    static <V, E, G> ShardPartition<V, E, G> byComponents(Graph<V, E> g, Predicate<V> vertexExported,
+                                                          Predicate<E> edgeExported, int maxShardSize,
+                                                          boolean directed, boolean identity) {
+        ShardPartition<V, E, G> partition = new ShardPartition<>(directed);
+        int vertexCount = g.vertexSet().size();
+        ObjectIntHashMap<V> indices = new ObjectIntHashMap<>(identity, -1, vertexCount);
+        List<V> vertices = new ArrayList<>(vertexCount);
+        for (V vertex : g.vertexSet()) {
+            if (vertexExported.test(vertex)) {
+                indices.put(vertex, vertices.size());
+                vertices.add(vertex);
+            }
+        }
+
+        int[] parent = new int[vertices.size()];
+        int[] size = new int[vertices.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        for (E edge : g.edgeSet()) {
+            if (edgeExported.test(edge)) {
+                union(parent, size, indices.get(g.getEdgeSource(edge)), indices.get(g.getEdgeTarget(edge)));
+            }
+        }
+
+        // a component goes to the shard which is open when its first vertex is seen
+        int[] rootShard = new int[vertices.size()];
+        Arrays.fill(rootShard, -1);
+        Shard<V, E, G> open = null;
+        for (int i = 0; i < vertices.size(); i++) {
+            int root = find(parent, i);
+            if (rootShard[root] < 0) {
+                if (open == null || (open.plannedSize > 0 && open.plannedSize + size[root] > maxShardSize)) {
+                    open = partition.addShard(null);
+                }
+                open.plannedSize += size[root];
+                rootShard[root] = open.index;
+            }
+            partition.shards.get(rootShard[root]).vertices.add(vertices.get(i));
+        }
+
+        for (E edge : g.edgeSet()) {
+            if (edgeExported.test(edge)) {
+                int source = rootShard[find(parent, indices.get(g.getEdgeSource(edge)))];
+                int target = rootShard[find(parent, indices.get(g.getEdgeTarget(edge)))];
+                partition.addEdge(edge, source, target);
+            }
+        }
+        return partition;
+    }
+
+    private static boolean isEmpty(GroupHierarchy<?, ?> hierarchy, int index, @Nullable Set<Object> emptyGroups) {
+        return emptyGroups != null && emptyGroups.contains(hierarchy.group(index));
+    }
+
+    /**
+     * Adds the group and its non empty descendants to the shard in pre-order, so parents come first
+     */
+    private static <V, E, G> void addGroups(GroupHierarchy<V, G> hierarchy, int index, @Nullable Set<Object> emptyGroups,
+                                            Shard<V, E, G> shard, int[] groupShards) {
+        shard.groups.add(hierarchy.group(index));
+        groupShards[index] = shard.index;
+        for (int child = hierarchy.firstChild(index); child >= 0; child = hierarchy.nextSibling(child)) {
+            // descendants of an empty group are empty as well
+            if (!isEmpty(hierarchy, child, emptyGroups)) {
+                addGroups(hierarchy, child, emptyGroups, shard, groupShards);
+            }
+        }
+    }
+
+    private Shard<V, E, G> addShard(@Nullable G group) {
+        Shard<V, E, G> shard = new Shard<>(shards.size(), group);
+        shards.add(shard);
+        return shard;
+    }
+
+    private void addEdge(E edge, int source, int target) {
+        if (source == target) {
+            shards.get(source).edges.add(edge);
+            return;
+        }
+        if (!directed && source > target) {
+            int swap = source;
+            source = target;
+            target = swap;
+        }
+        long key = ((long) source << 32) | target;
+        Link link = linksByShards.get(key);
+        if (link == null) {
+            link = new Link(source, target);
+            linksByShards.put(key, link);
+            links.add(link);
+        }
+        link.count++;
+    }
+
+    /**
+     * Union by size, so the trees stay flat
+     */
+    private static void union(int[] parent, int[] size, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA == rootB) {
+            return;
+        }
+        if (size[rootA] < size[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
+    }
+
+    /**
+     * Finds the root of i, halving the path on the way
+     */
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
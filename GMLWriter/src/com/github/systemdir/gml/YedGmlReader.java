@@ -0,0 +1,629 @@
+package com.github.systemdir.gml;
+
+import com.github.systemdir.gml.io.GmlTokenizer;
+import com.github.systemdir.gml.io.GmlTokenizer.Token;
+import com.github.systemdir.gml.model.EdgeGraphicDefinition;
+import com.github.systemdir.gml.model.GraphicDefinition;
+import com.github.systemdir.gml.model.GraphicDefinitionRegistry;
+import com.github.systemdir.gml.model.NodeGraphicDefinition;
+import com.github.systemdir.gml.model.YedGmlGraphicsProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DirectedPseudograph;
+import org.jgrapht.graph.Pseudograph;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static com.github.systemdir.gml.io.GmlBuffer.ascii;
+
+/**
+ * Reads GML files written by {@link YedGmlWriter} or saved by yED back into a jgrapht graph.
+ * <p>
+ * The file is streamed window by window by a {@link GmlTokenizer}, so its size is only limited by the
+ * graph which is built from it. Keys are matched in place and equal graphic definitions are read into one
+ * instance; per node and edge only the label is allocated besides the graph elements.
+ * <p>
+ * Groups are read into the same form {@link YedGmlWriter.Builder#setGroups} takes, so a graph can be written
+ * again:
+ * <pre>
+ * YedGmlReader.Result result = YedGmlReader.read(file);
+ * YedGmlWriter&lt;GmlNode, GmlEdge, GmlNode&gt; writer = new YedGmlWriter.Builder&lt;&gt;(result.getGraphicsProvider(), PRINT_LABELS)
+ *         .setGroups(result.getGroups(), GmlNode::getLabel)
+ *         .setVertexLabelProvider(GmlNode::getLabel)
+ *         .build();
+ * </pre>
+ */
+public final class YedGmlReader {
+    private static final byte[] GRAPH = ascii("graph");
+    private static final byte[] DIRECTED = ascii("directed");
+    private static final byte[] NODE = ascii("node");
+    private static final byte[] EDGE = ascii("edge");
+    private static final byte[] ID = ascii("id");
+    private static final byte[] LABEL = ascii("label");
+    private static final byte[] GID = ascii("gid");
+    private static final byte[] IS_GROUP = ascii("isGroup");
+    private static final byte[] SOURCE = ascii("source");
+    private static final byte[] TARGET = ascii("target");
+    private static final byte[] GRAPHICS = ascii("graphics");
+    private static final byte[] LABEL_GRAPHICS = ascii("LabelGraphics");
+    private static final byte[] X = ascii("x");
+    private static final byte[] Y = ascii("y");
+    private static final byte[] W = ascii("w");
+    private static final byte[] H = ascii("h");
+    private static final byte[] TYPE = ascii("type");
+    private static final byte[] FILL = ascii("fill");
+    private static final byte[] LINE = ascii("line");
+    // the border colour of nodes as saved by yED
+    private static final byte[] OUTLINE = ascii("outline");
+    private static final byte[] OUTLINE_STYLE = ascii("outlineStyle");
+    private static final byte[] OUTLINE_WIDTH = ascii("outlineWidth");
+    private static final byte[] TOP_BORDER_INSET = ascii("topBorderInset");
+    private static final byte[] BOTTOM_BORDER_INSET = ascii("bottomBorderInset");
+    private static final byte[] LEFT_BORDER_INSET = ascii("leftBorderInset");
+    private static final byte[] RIGHT_BORDER_INSET = ascii("rightBorderInset");
+    private static final byte[] WIDTH = ascii("width");
+    private static final byte[] STYLE = ascii("style");
+    private static final byte[] SOURCE_ARROW = ascii("sourceArrow");
+    private static final byte[] TARGET_ARROW = ascii("targetArrow");
+    private static final byte[] TEXT = ascii("text");
+    private static final byte[] COLOR = ascii("color");
+    private static final byte[] FONT_SIZE = ascii("fontSize");
+    private static final byte[] FONT_STYLE = ascii("fontStyle");
+    private static final byte[] ANCHOR = ascii("anchor");
+    private static final byte[] NONE = ascii("none");
+
+    private static final NodeGraphicDefinition.Form[] FORMS = NodeGraphicDefinition.Form.values();
+    private static final byte[][] FORM_NAMES = encode(FORMS, Enum::name);
+    private static final GraphicDefinition.LineType[] LINE_TYPES = GraphicDefinition.LineType.values();
+    private static final byte[][] LINE_TYPE_NAMES = encode(LINE_TYPES, Enum::name);
+    private static final GraphicDefinition.FontStyle[] FONT_STYLES = GraphicDefinition.FontStyle.values();
+    private static final byte[][] FONT_STYLE_NAMES = encode(FONT_STYLES, Enum::name);
+    private static final NodeGraphicDefinition.LabelPlacement[] LABEL_PLACEMENTS = NodeGraphicDefinition.LabelPlacement.values();
+    private static final byte[][] LABEL_PLACEMENT_NAMES = encode(LABEL_PLACEMENTS, NodeGraphicDefinition.LabelPlacement::getPlacementString);
+    private static final EdgeGraphicDefinition.ArrowType[] ARROW_TYPES = EdgeGraphicDefinition.ArrowType.values();
+    private static final byte[][] ARROW_TYPE_NAMES = encode(ARROW_TYPES, arrow -> arrow.getRepresentedBy() != null ? arrow.getRepresentedBy() : "none");
+    // size yED assumes for a missing w or h
+    private static final double DEFAULT_NODE_SIZE = 30;
+
+    @NotNull
+    private final GmlTokenizer tokens;
+    private Graph<GmlNode, GmlEdge> graph;
+    private boolean directed;
+    private final LongNodeMap nodesByNumber = new LongNodeMap();
+    private final Map<String, GmlNode> nodesByText = new HashMap<>();
+    // nodes referenced by an edge or gid before they were defined
+    private int undefinedNodes;
+    private final Map<GmlNode, Set<GmlNode>> groups = new LinkedHashMap<>();
+    private final GraphicDefinitionRegistry definitions = new GraphicDefinitionRegistry();
+    private final Map<Integer, Color> colors = new HashMap<>();
+
+    // the last id read by readId
+    private long numericId;
+    @Nullable
+    private String textId;
+    // LabelGraphics text of the current element
+    @Nullable
+    private String labelText;
+
+    private YedGmlReader(@NotNull GmlTokenizer tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Reads a GML file
+     *
+     * @param file the file to read
+     * @return the graph with its groups
+     * @throws IOException if reading fails or the file is no valid GML
+     */
+    @NotNull
+    public static Result read(@NotNull Path file) throws IOException {
+        return read(file, GmlTokenizer.DEFAULT_WINDOW_SIZE);
+    }
+
+    @NotNull
+    static Result read(@NotNull Path file, int windowSize) throws IOException {
+        try (GmlTokenizer tokens = new GmlTokenizer(file, windowSize)) {
+            return new YedGmlReader(tokens).readFile();
+        }
+    }
+
+    private Result readFile() throws IOException {
+        while (tokens.next() != Token.END) {
+            expect(Token.KEY);
+            boolean isGraph = tokens.matches(GRAPH);
+            if (tokens.next() == Token.LIST_START && isGraph && graph == null) {
+                readGraph();
+            } else {
+                tokens.skipValue();
+            }
+        }
+        if (graph == null) {
+            throw new IOException("no graph found");
+        }
+        if (undefinedNodes > 0) {
+            throw new IOException(undefinedNodes + " nodes are referenced but not defined");
+        }
+        return new Result(graph, groups, directed);
+    }
+
+    private void readGraph() throws IOException {
+        while (tokens.next() != Token.LIST_END) {
+            expect(Token.KEY);
+            boolean isDirected = tokens.matches(DIRECTED);
+            boolean isNode = tokens.matches(NODE);
+            boolean isEdge = tokens.matches(EDGE);
+            Token value = tokens.next();
+            if (isDirected && value == Token.INTEGER) {
+                if (graph != null) {
+                    throw new IOException("directed must be set before the first node at position " + tokens.position());
+                }
+                directed = tokens.longValue() != 0;
+            } else if ((isNode || isEdge) && value == Token.LIST_START) {
+                if (graph == null) {
+                    graph = directed ? new DirectedPseudograph<>(GmlEdge.class) : new Pseudograph<>(GmlEdge.class);
+                }
+                if (isNode) {
+                    readNode();
+                } else {
+                    readEdge();
+                }
+            } else {
+                tokens.skipValue();
+            }
+        }
+        if (graph == null) {
+            graph = directed ? new DirectedPseudograph<>(GmlEdge.class) : new Pseudograph<>(GmlEdge.class);
+        }
+    }
+
+    private void readNode() throws IOException {
+        boolean hasId = false;
+        long id = 0;
+        String idText = null;
+        String label = null;
+        labelText = null;
+        NodeGraphicDefinition.Builder graphics = null;
+        boolean hasGroup = false;
+        long groupId = 0;
+        String groupText = null;
+        boolean isGroup = false;
+
+        while (tokens.next() != Token.LIST_END) {
+            expect(Token.KEY);
+            if (tokens.matches(ID)) {
+                readId();
+                hasId = true;
+                id = numericId;
+                idText = textId;
+            } else if (tokens.matches(LABEL)) {
+                tokens.next();
+                label = tokens.stringValue();
+            } else if (tokens.matches(GRAPHICS)) {
+                if (tokens.next() == Token.LIST_START) {
+                    graphics = graphics != null ? graphics : new NodeGraphicDefinition.Builder();
+                    readNodeGraphics(graphics);
+                }
+            } else if (tokens.matches(LABEL_GRAPHICS)) {
+                if (tokens.next() == Token.LIST_START) {
+                    graphics = graphics != null ? graphics : new NodeGraphicDefinition.Builder();
+                    readLabelGraphics(graphics, graphics);
+                }
+            } else if (tokens.matches(GID)) {
+                readId();
+                hasGroup = true;
+                groupId = numericId;
+                groupText = textId;
+            } else if (tokens.matches(IS_GROUP)) {
+                tokens.next();
+                isGroup = tokens.token() == Token.INTEGER && tokens.longValue() != 0;
+            } else {
+                tokens.next();
+                tokens.skipValue();
+            }
+        }
+
+        if (!hasId) {
+            throw new IOException("node without id before position " + tokens.position());
+        }
+        GmlNode node = node(id, idText);
+        if (node.isDefined()) {
+            throw new IOException("duplicate node id " + node.getId() + " before position " + tokens.position());
+        }
+        node.setDefined();
+        undefinedNodes--;
+        node.setLabel(label != null ? label : labelText);
+        if (graphics != null) {
+            node.setGraphics(definitions.intern(graphics.build()));
+        }
+        if (isGroup) {
+            node.setIsGroup(true);
+            groups.computeIfAbsent(node, group -> new LinkedHashSet<>());
+        }
+        if (hasGroup) {
+            GmlNode group = node(groupId, groupText);
+            node.setGroup(group);
+            groups.computeIfAbsent(group, g -> new LinkedHashSet<>()).add(node);
+        }
+    }
+
+    private void readEdge() throws IOException {
+        boolean hasId = false;
+        long id = 0;
+        String idText = null;
+        GmlNode source = null;
+        GmlNode target = null;
+        String label = null;
+        labelText = null;
+        EdgeGraphicDefinition.Builder graphics = null;
+
+        while (tokens.next() != Token.LIST_END) {
+            expect(Token.KEY);
+            if (tokens.matches(ID)) {
+                readId();
+                hasId = true;
+                id = numericId;
+                idText = textId;
+            } else if (tokens.matches(SOURCE)) {
+                readId();
+                source = node(numericId, textId);
+            } else if (tokens.matches(TARGET)) {
+                readId();
+                target = node(numericId, textId);
+            } else if (tokens.matches(LABEL)) {
+                tokens.next();
+                label = tokens.stringValue();
+            } else if (tokens.matches(GRAPHICS)) {
+                if (tokens.next() == Token.LIST_START) {
+                    graphics = graphics != null ? graphics : new EdgeGraphicDefinition.Builder();
+                    readEdgeGraphics(graphics);
+                }
+            } else if (tokens.matches(LABEL_GRAPHICS)) {
+                if (tokens.next() == Token.LIST_START) {
+                    graphics = graphics != null ? graphics : new EdgeGraphicDefinition.Builder();
+                    readLabelGraphics(graphics, null);
+                }
+            } else {
+                tokens.next();
+                tokens.skipValue();
+            }
+        }
+
+        if (source == null || target == null) {
+            throw new IOException("edge without source or target before position " + tokens.position());
+        }
+        EdgeGraphicDefinition definition = graphics != null ? definitions.intern(graphics.build()) : null;
+        graph.addEdge(source, target, new GmlEdge(hasId, id, idText, source, target, label != null ? label : labelText, definition));
+    }
+
+    private void readNodeGraphics(NodeGraphicDefinition.Builder graphics) throws IOException {
+        // absent values stay unset, so the definition writes back what was read
+        Double x = null;
+        Double y = null;
+        Double w = null;
+        Double h = null;
+        while (tokens.next() != Token.LIST_END) {
+            expect(Token.KEY);
+            if (tokens.matches(X)) {
+                x = readDouble();
+            } else if (tokens.matches(Y)) {
+                y = readDouble();
+            } else if (tokens.matches(W)) {
+                w = readDouble();
+            } else if (tokens.matches(H)) {
+                h = readDouble();
+            } else if (tokens.matches(TYPE)) {
+                tokens.next();
+                NodeGraphicDefinition.Form form = match(FORMS, FORM_NAMES);
+                if (form != null) {
+                    graphics.setForm(form);
+                }
+            } else if (tokens.matches(FILL)) {
+                graphics.setFill(readColor());
+            } else if (tokens.matches(LINE) || tokens.matches(OUTLINE)) {
+                graphics.setLineColor(readColor());
+            } else if (tokens.matches(OUTLINE_STYLE)) {
+                tokens.next();
+                graphics.setLineType(lineType());
+            } else if (tokens.matches(OUTLINE_WIDTH)) {
+                graphics.setLineWidth(readInt());
+            } else if (tokens.matches(TOP_BORDER_INSET)) {
+                graphics.setTopBorderInset(readDouble());
+            } else if (tokens.matches(BOTTOM_BORDER_INSET)) {
+                graphics.setBottomBorderInset(readDouble());
+            } else if (tokens.matches(LEFT_BORDER_INSET)) {
+                graphics.setLeftBorderInset(readDouble());
+            } else if (tokens.matches(RIGHT_BORDER_INSET)) {
+                graphics.setRightBorderInset(readDouble());
+            } else {
+                tokens.next();
+                tokens.skipValue();
+            }
+        }
+        if (x != null || y != null) {
+            graphics.setPosition(x != null ? x : 0, y != null ? y : 0);
+        }
+        if (w != null || h != null) {
+            graphics.setSize(w != null ? w : DEFAULT_NODE_SIZE, h != null ? h : DEFAULT_NODE_SIZE);
+        }
+    }
+
+    private void readEdgeGraphics(EdgeGraphicDefinition.Builder graphics) throws IOException {
+        while (tokens.next() != Token.LIST_END) {
+            expect(Token.KEY);
+            if (tokens.matches(FILL)) {
+                graphics.setLineColour(readColor());
+            } else if (tokens.matches(WIDTH)) {
+                graphics.setLineWidth(readInt());
+            } else if (tokens.matches(STYLE)) {
+                tokens.next();
+                graphics.setLineType(lineType());
+            } else if (tokens.matches(SOURCE_ARROW)) {
+                tokens.next();
+                graphics.setSourceArrow(arrowType());
+            } else if (tokens.matches(TARGET_ARROW)) {
+                tokens.next();
+                graphics.setTargetArrow(arrowType());
+            } else {
+                // e.g. the bends yED stores as Line [ point [ x y ] ]
+                tokens.next();
+                tokens.skipValue();
+            }
+        }
+    }
+
+    /**
+     * @param node set to read the anchor of node labels
+     */
+    private void readLabelGraphics(GraphicDefinition.Builder<?> graphics, @Nullable NodeGraphicDefinition.Builder node) throws IOException {
+        while (tokens.next() != Token.LIST_END) {
+            expect(Token.KEY);
+            if (tokens.matches(TEXT)) {
+                tokens.next();
+                labelText = tokens.stringValue();
+            } else if (tokens.matches(COLOR)) {
+                graphics.setLabelColour(readColor());
+            } else if (tokens.matches(FILL)) {
+                graphics.setLabelBackground(readColor());
+            } else if (tokens.matches(FONT_SIZE)) {
+                graphics.setFontSize(readInt());
+            } else if (tokens.matches(FONT_STYLE)) {
+                tokens.next();
+                GraphicDefinition.FontStyle fontStyle = match(FONT_STYLES, FONT_STYLE_NAMES);
+                if (fontStyle != null) {
+                    graphics.setFontStyle(fontStyle);
+                }
+            } else if (node != null && tokens.matches(ANCHOR)) {
+                tokens.next();
+                node.setLabelPlacement(match(LABEL_PLACEMENTS, LABEL_PLACEMENT_NAMES));
+            } else {
+                tokens.next();
+                tokens.skipValue();
+            }
+        }
+    }
+
+    /**
+     * Reads an id value into numericId or textId. yED writes numbers, custom id providers may write any text.
+     */
+    private void readId() throws IOException {
+        Token value = tokens.next();
+        if (value == Token.INTEGER) {
+            numericId = tokens.longValue();
+            textId = null;
+        } else if (value == Token.LIST_START || value == Token.LIST_END || value == Token.END) {
+            throw new IOException("id expected at position " + tokens.position());
+        } else {
+            numericId = 0;
+            textId = tokens.stringValue();
+        }
+    }
+
+    /**
+     * @return the node with the id, which is created and added to the graph on first use
+     */
+    private GmlNode node(long id, @Nullable String text) {
+        GmlNode node = text == null ? nodesByNumber.get(id) : nodesByText.get(text);
+        if (node == null) {
+            node = new GmlNode(id, text);
+            if (text == null) {
+                nodesByNumber.put(id, node);
+            } else {
+                nodesByText.put(text, node);
+            }
+            graph.addVertex(node);
+            // until the node record is read
+            undefinedNodes++;
+        }
+        return node;
+    }
+
+    private double readDouble() throws IOException {
+        tokens.next();
+        return tokens.doubleValue();
+    }
+
+    private int readInt() throws IOException {
+        tokens.next();
+        if (tokens.token() != Token.STRING) {
+            return (int) tokens.doubleValue();
+        }
+        // widths are written as strings, e.g. outlineWidth "2"
+        try {
+            return Integer.parseInt(tokens.stringValue().trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("integer expected at position " + tokens.position(), e);
+        }
+    }
+
+    private Color readColor() throws IOException {
+        tokens.next();
+        return colors.computeIfAbsent(tokens.colorValue(), argb -> new Color(argb, true));
+    }
+
+    private GraphicDefinition.LineType lineType() {
+        GraphicDefinition.LineType lineType = match(LINE_TYPES, LINE_TYPE_NAMES);
+        return lineType != null ? lineType : GraphicDefinition.LineType.NORMAL;
+    }
+
+    private EdgeGraphicDefinition.ArrowType arrowType() {
+        if (tokens.matchesIgnoreCase(NONE)) {
+            return EdgeGraphicDefinition.ArrowType.NONE;
+        }
+        EdgeGraphicDefinition.ArrowType arrowType = match(ARROW_TYPES, ARROW_TYPE_NAMES);
+        // yED knows more arrows than ArrowType (e.g. "standard"), keep at least an arrow
+        return arrowType != null ? arrowType : EdgeGraphicDefinition.ArrowType.DELTA;
+    }
+
+    @Nullable
+    private <T> T match(T[] values, byte[][] names) {
+        for (int i = 0; i < values.length; i++) {
+            if (tokens.matchesIgnoreCase(names[i])) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    private void expect(Token expected) throws IOException {
+        if (tokens.token() != expected) {
+            throw new IOException(expected + " expected but found " + tokens.token() + " at position " + tokens.position());
+        }
+    }
+
+    private static <T extends Enum<T>> byte[][] encode(T[] values, Function<T, String> representation) {
+        byte[][] encoded = new byte[values.length][];
+        for (T value : values) {
+            encoded[value.ordinal()] = ascii(representation.apply(value));
+        }
+        return encoded;
+    }
+
+    /**
+     * Open addressing map of numeric node ids, which avoids a boxed key per node
+     */
+    private static final class LongNodeMap {
+        private long[] keys = new long[1024];
+        private GmlNode[] values = new GmlNode[1024];
+        private int size;
+
+        @Nullable
+        GmlNode get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds a key which is not yet in the map
+         */
+        void put(long key, GmlNode value) {
+            if (size >= keys.length * 3 / 4) {
+                grow();
+            }
+            insert(keys, values, key, value);
+            size++;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            GmlNode[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new GmlNode[oldValues.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    insert(keys, values, oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static void insert(long[] keys, GmlNode[] values, long key, GmlNode value) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+
+    /**
+     * A graph read by {@link YedGmlReader}
+     */
+    public static final class Result {
+        @NotNull
+        private final Graph<GmlNode, GmlEdge> graph;
+        @NotNull
+        private final Map<GmlNode, Set<GmlNode>> groups;
+        private final boolean directed;
+
+        private Result(@NotNull Graph<GmlNode, GmlEdge> graph, @NotNull Map<GmlNode, Set<GmlNode>> groups, boolean directed) {
+            this.graph = graph;
+            this.groups = groups;
+            this.directed = directed;
+        }
+
+        /**
+         * @return the graph, a {@link DirectedPseudograph} or a {@link Pseudograph} depending on {@link #isDirected()}.
+         * Group nodes are vertices as well, as edges may connect them.
+         */
+        @NotNull
+        public Graph<GmlNode, GmlEdge> getGraph() {
+            return graph;
+        }
+
+        /**
+         * @return the group nodes mapped to their members, in file order
+         */
+        @NotNull
+        public Map<GmlNode, Set<GmlNode>> getGroups() {
+            return groups;
+        }
+
+        public boolean isDirected() {
+            return directed;
+        }
+
+        /**
+         * @return a provider returning the graphics read from the file, to write the graph again
+         */
+        @NotNull
+        public YedGmlGraphicsProvider<GmlNode, GmlEdge, GmlNode> getGraphicsProvider() {
+            return new YedGmlGraphicsProvider<GmlNode, GmlEdge, GmlNode>() {
+                @Override
+                public NodeGraphicDefinition getVertexGraphics(GmlNode vertex) {
+                    return vertex.getGraphics();
+                }
+
+                @Override
+                public EdgeGraphicDefinition getEdgeGraphics(GmlEdge edge, GmlNode edgeSource, GmlNode edgeTarget) {
+                    return edge.getGraphics();
+                }
+
+                @Override
+                public NodeGraphicDefinition getGroupGraphics(GmlNode group, Set<GmlNode> groupElements) {
+                    return group.getGraphics();
+                }
+            };
+        }
+    }
+}
@@ -35,7 +35,18 @@
  */
 package com.github.systemdir.gml;
 
+import com.github.systemdir.gml.io.AsyncOutputStream;
+import com.github.systemdir.gml.io.ChannelOutputStream;
+import com.github.systemdir.gml.io.GmlBuffer;
+import com.github.systemdir.gml.io.ParallelGzipOutputStream;
+import com.github.systemdir.gml.io.QuotedLabelCache;
+import com.github.systemdir.gml.io.WriterOutputStream;
+import com.github.systemdir.gml.jfr.JfrSupport;
+import com.github.systemdir.gml.model.BatchGraphicsProvider;
+import com.github.systemdir.gml.model.ConcurrentUniqueIntIdFunction;
 import com.github.systemdir.gml.model.EdgeGraphicDefinition;
+import com.github.systemdir.gml.model.GraphicDefinition;
+import com.github.systemdir.gml.model.GraphicDefinitionRegistry;
 import com.github.systemdir.gml.model.NodeGraphicDefinition;
 import com.github.systemdir.gml.model.UniqueIntIdFunction;
 import com.github.systemdir.gml.model.YedGmlGraphicsProvider;
@@ -45,17 +56,42 @@ import org.jgrapht.DirectedGraph;
 import org.jgrapht.Graph;
 import org.jgrapht.UndirectedGraph;
 
-import java.io.PrintWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.zip.GZIPOutputStream;
 
+import static com.github.systemdir.gml.ExportPhase.*;
 import static com.github.systemdir.gml.YedGmlWriter.PrintLabels.*;
+import static com.github.systemdir.gml.io.GmlBuffer.ascii;
 
 
 /**
@@ -65,6 +101,9 @@ import static com.github.systemdir.gml.YedGmlWriter.PrintLabels.*;
  * href="http://www.infosun.fmi.uni-passau.de/Graphlet/GML/">
  * http://www.infosun.fmi.uni-passau.de/Graphlet/GML/</a>.</p>
  * <p>
+ * Once built, a writer only holds configuration and may run any amount of exports concurrently; all state of an
+ * export lives in its {@link ExportSession}. The graphics, label and custom id providers then have to support
+ * concurrent calls as well.
  *
  * @author (GML writer) Dimitrios Michail
  * @author (yED extension) Hayato Hess
@@ -74,11 +113,35 @@ public class YedGmlWriter<V, E, G> {
     public static class Builder<V1, E1, G1> {
         Function<G1, String> groupLabelProvider;
         Map<G1, ? extends Set<V1>> groupMapping;
+        Function<V1, G1> groupClassifier;
+        Function<G1, G1> groupParentProvider;
         Function<Object, String> vertexIDProvider;
         Function<V1, String> vertexLabelProvider;
         Function<E1, String> edgeIDProvider;
         Function<E1, String> edgeLabelProvider;
         YedGmlGraphicsProvider<V1, E1, G1> graphicsProvider;
+        boolean internGraphics = true;
+        boolean identityIds;
+        boolean shareIds;
+        ForkJoinPool pool;
+        int chunkSize = 1024;
+        int graphicsBatchSize = 256;
+        boolean gzip;
+        ExecutorService compressionExecutor;
+        int compressionThreads;
+        int compressionBlockSize;
+        Executor outputExecutor;
+        int outputBuffers;
+        int outputBufferSize;
+        Supplier<? extends ExportListener> exportListeners;
+        int labelCacheSize;
+        boolean incremental;
+        Predicate<? super V1> vertexFilter;
+        Predicate<? super E1> edgeFilter;
+        int maxShardSize = 100_000;
+        boolean shardOverview = true;
+        int layoutIterations;
+        double layoutEdgeLength;
 
         EnumSet<PrintLabels> printLabels;
 
@@ -98,10 +161,49 @@ public class YedGmlWriter<V, E, G> {
          */
         public Builder<V1, E1, G1> setGroups(Map<G1, ? extends Set<V1>> groupMapping, Function<G1, String> groupLabelProvider) {
             this.groupMapping = groupMapping;
+            this.groupClassifier = null;
             this.groupLabelProvider = groupLabelProvider;
             return this;
         }
 
+        /**
+         * Group nodes together by a function returning the group of each vertex, instead of a mapping of the groups
+         * to their vertices. Replaces {@link #setGroups(Map, Function)}.
+         * <p>
+         * No index of the vertices is built: the groups are discovered while the vertices are written, and the
+         * vertices of a group are only collected, in one pass over the graph, if the graphics provider iterates the
+         * set passed to {@link YedGmlGraphicsProvider#getGroupGraphics}. Groups are not looked up among the vertices
+         * of the graph, so a graph must not contain its groups as vertices. Push based exports
+         * ({@link YedGmlWriter#openSession}) do not know the groups and write no gid.
+         *
+         * @param groupClassifier returns the group of a vertex, null for vertices without group. Called at least
+         * once per vertex and export, so it should be cheap.
+         * @param groupLabelProvider Optional label function for the group. When null, toString() is used for generating group labels.
+         * @return this
+         */
+        public Builder<V1, E1, G1> setGroupClassifier(Function<V1, G1> groupClassifier, Function<G1, String> groupLabelProvider) {
+            this.groupClassifier = groupClassifier;
+            this.groupMapping = null;
+            this.groupLabelProvider = groupLabelProvider;
+            return this;
+        }
+
+        /**
+         * Nests the groups of {@link #setGroups} or {@link #setGroupClassifier}, e.g. region, cluster, namespace. A group is written with the id of
+         * its parent as gid, like the vertices of a group.
+         * <p>
+         * The function is called once per group when the writer is built, or when a classified group is discovered. Parents do not need to be part of the
+         * group mapping, a parent without vertices of its own is written as long as one of its descendants is.
+         *
+         * @param groupParentProvider returns the parent of a group, null for top level groups. Null to disable
+         * nesting (the default).
+         * @return this
+         */
+        public Builder<V1, E1, G1> setGroupHierarchy(@Nullable Function<G1, G1> groupParentProvider) {
+            this.groupParentProvider = groupParentProvider;
+            return this;
+        }
+
         /**
          * Sets a id provider for the vertexes.
          * <p>
@@ -154,9 +256,290 @@ public class YedGmlWriter<V, E, G> {
             return this;
         }
 
+        /**
+         * Makes the default id provider tell elements apart by identity instead of equals/hashCode.
+         * <p>
+         * Faster for elements with expensive hashCode implementations. Only use it when equal elements are the
+         * same instances, e.g. as in most jgrapht graphs.
+         *
+         * @param identityIds true for identity based ids
+         * @return this
+         */
+        public Builder<V1, E1, G1> setIdentityIds(boolean identityIds) {
+            this.identityIds = identityIds;
+            return this;
+        }
+
+        /**
+         * Keeps the ids of the default id provider across exports, so an element gets the same id in every export
+         * of this writer.
+         * <p>
+         * Disabled by default: every export starts with id 1 and forgets its elements when done. When enabled, the
+         * writer keeps every exported vertex, edge and group reachable for its whole lifetime. The shared ids are
+         * kept in a {@link ConcurrentUniqueIntIdFunction}, so concurrent exports stay possible; which of them
+         * assigns an id first is not defined then.
+         *
+         * @param shareIds true to share ids across exports
+         * @return this
+         */
+        public Builder<V1, E1, G1> setShareIdsAcrossExports(boolean shareIds) {
+            this.shareIds = shareIds;
+            return this;
+        }
+
+        /**
+         * Collapses structurally identical graphic definitions returned by the graphics provider to one instance
+         * per export, so each distinct style is rendered only once.
+         * <p>
+         * Enabled by default. Disable it when nearly every element has its own style (e.g. an individual
+         * position), as the registry then only costs memory; definitions are then rendered straight into the
+         * output without caching their GML.
+         *
+         * @param internGraphics true to intern the graphic definitions
+         * @return this
+         * @see GraphicDefinitionRegistry
+         */
+        public Builder<V1, E1, G1> setInternGraphics(boolean internGraphics) {
+            this.internGraphics = internGraphics;
+            return this;
+        }
+
+        /**
+         * Sets the amount of vertices or edges whose graphics are looked up in one call if the graphics provider
+         * is a {@link BatchGraphicsProvider}. Other providers are always called per element.
+         * <p>
+         * Defaults to 256. With a parallel export, a task renders chunkSize / batchSize batches.
+         *
+         * @param batchSize elements per call, 1 to call the per element methods of a batch provider
+         * @return this
+         */
+        public Builder<V1, E1, G1> setGraphicsBatchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+            }
+            this.graphicsBatchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Renders the vertices, groups and edges in chunks on the given pool. The chunks are written in the original
+         * iteration order, so the output is identical to a sequential export.
+         * <p>
+         * Ids are assigned up front, so the id providers are only read while rendering. The graphics provider,
+         * the label providers and custom id providers must therefore support concurrent calls.
+         *
+         * @param pool the pool used for rendering, null for a sequential export (the default)
+         * @param chunkSize amount of elements rendered per task
+         * @return this
+         */
+        public Builder<V1, E1, G1> setParallel(@Nullable ForkJoinPool pool, int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+            }
+            this.pool = pool;
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Gzip compresses the output of exports to an OutputStream or channel. Writer based exports are never
+         * compressed.
+         *
+         * @param gzip true to write gzip
+         * @return this
+         */
+        public Builder<V1, E1, G1> setGzipCompression(boolean gzip) {
+            this.gzip = gzip;
+            if (!gzip) {
+                this.compressionExecutor = null;
+            }
+            return this;
+        }
+
+        /**
+         * Gzip compresses the output like {@link #setGzipCompression(boolean)}, but compresses independent blocks on
+         * several threads while the export continues rendering. The result is a standard multi-member gzip stream.
+         *
+         * @param executor runs the compression, e.g. a fixed thread pool
+         * @param threads amount of blocks to compress at the same time, usually the threads of the executor
+         * @param blockSize uncompressed bytes per block, e.g. 1MB
+         * @return this
+         * @see ParallelGzipOutputStream
+         */
+        public Builder<V1, E1, G1> setParallelGzipCompression(@NotNull ExecutorService executor, int threads, int blockSize) {
+            if (threads < 1 || blockSize < 1024) {
+                throw new IllegalArgumentException("threads must be positive and blockSize at least 1024");
+            }
+            this.gzip = true;
+            this.compressionExecutor = executor;
+            this.compressionThreads = threads;
+            this.compressionBlockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Writes the output on another thread while the export continues rendering, which hides the latency of
+         * slow sinks such as network storage. The rendered data is copied into a ring of buffers drained in order
+         * by a task on the executor; the export waits when all buffers are full, so memory stays bounded.
+         * <p>
+         * A failure of the output is rethrown by the export. Compression, if configured, still runs on the
+         * rendering side. Sharded exports write their files directly and ignore this setting.
+         *
+         * @param executor runs the drain task, e.g. a virtual thread per task executor. Null to write on the
+         * rendering thread (the default)
+         * @param buffers amount of buffers, at least 2
+         * @param bufferSize bytes per buffer, at least 1024, e.g. 1MB
+         * @return this
+         * @see AsyncOutputStream
+         */
+        public Builder<V1, E1, G1> setAsyncOutput(@Nullable Executor executor, int buffers, int bufferSize) {
+            if (buffers < 2 || bufferSize < 1024) {
+                throw new IllegalArgumentException("buffers must be at least 2 and bufferSize at least 1024");
+            }
+            this.outputExecutor = executor;
+            this.outputBuffers = buffers;
+            this.outputBufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Exports only the vertices accepted by the filter, without copying the graph.
+         * <p>
+         * Edges are dropped if one of their endpoints is filtered out, groups if none of their members is left.
+         * The filter is evaluated during the export, possibly several times per vertex, and must therefore be cheap
+         * and support concurrent calls for a parallel export. Ids are assigned as if the graph was not filtered.
+         *
+         * @param vertexFilter returns true for vertices to export, null to export all (the default)
+         * @return this
+         */
+        public Builder<V1, E1, G1> setVertexFilter(@Nullable Predicate<? super V1> vertexFilter) {
+            this.vertexFilter = vertexFilter;
+            return this;
+        }
+
+        /**
+         * Exports only the edges accepted by the filter, see {@link #setVertexFilter(Predicate)}
+         *
+         * @param edgeFilter returns true for edges to export, null to export all (the default)
+         * @return this
+         */
+        public Builder<V1, E1, G1> setEdgeFilter(@Nullable Predicate<? super E1> edgeFilter) {
+            this.edgeFilter = edgeFilter;
+            return this;
+        }
+
+        /**
+         * Keeps the rendered gml of every element of the last export, so the next export only renders elements
+         * which changed and copies the others.
+         * <p>
+         * An element is unchanged if its ids, its group or endpoints, its label and its graphic definition are
+         * the same; the providers are still called for every element. The ids have to be stable for this:
+         * use id providers based on the elements (e.g. database keys) or {@link #setShareIdsAcrossExports(boolean)},
+         * as the default ids shift as soon as elements are added or removed.
+         * <p>
+         * The records are kept by the writer, which then holds on to the gml of a whole graph between exports. Only
+         * one export at a time uses them, concurrent exports render everything. Meant for writers which
+         * repeatedly export the same (slowly changing) graph; other graphs simply miss the records.
+         *
+         * @param incremental true to reuse the records of the last export
+         * @return this
+         */
+        public Builder<V1, E1, G1> setIncremental(boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+
+        /**
+         * Caches the quoted and encoded form of recently written labels, so labels which repeat many times (e.g.
+         * edge labels like "q:1") are only encoded once. The cache is shared by all exports of the writer.
+         * <p>
+         * Disabled by default, as it only pays off when many elements share the same labels.
+         *
+         * @param labelCacheSize amount of cached labels, 0 to disable
+         * @return this
+         * @see QuotedLabelCache
+         */
+        public Builder<V1, E1, G1> setLabelCache(int labelCacheSize) {
+            if (labelCacheSize < 0) {
+                throw new IllegalArgumentException("labelCacheSize must not be negative: " + labelCacheSize);
+            }
+            this.labelCacheSize = labelCacheSize;
+            return this;
+        }
+
+        /**
+         * Configures {@link YedGmlWriter#exportShards sharded exports}.
+         * <p>
+         * Without groups, connected components are packed into shards of up to maxShardSize vertices. A
+         * component which is larger stays in one shard of its own. Defaults to 100000 vertices with overview.
+         *
+         * @param maxShardSize maximum amount of vertices of a shard made of several components
+         * @param overview true to write an overview file with one node per shard and the edges between shards
+         * @return this
+         */
+        public Builder<V1, E1, G1> setShardOptions(int maxShardSize, boolean overview) {
+            if (maxShardSize < 1) {
+                throw new IllegalArgumentException("maxShardSize must be positive: " + maxShardSize);
+            }
+            this.maxShardSize = maxShardSize;
+            this.shardOverview = overview;
+            return this;
+        }
+
+        /**
+         * Positions the vertices by a force directed layout before they are written, so yED opens the file laid
+         * out instead of having to lay out a large graph itself. The computed center of a vertex replaces the
+         * position of its graphic definition, its size is kept. Groups are placed around their members.
+         * <p>
+         * The layout is a Barnes-Hut approximated Fruchterman-Reingold layout, computed in chunks of
+         * {@link #setParallel chunkSize} vertices on the pool of {@link #setParallel}, or the common pool if none
+         * is set. Members of a group are pulled together, so groups form clusters. The layout is deterministic,
+         * exporting the same graph twice creates the same positions. Applies to graph and sharded exports, push
+         * based exports do not know the graph and are not laid out.
+         *
+         * @param iterations amount of iterations, e.g. 100 to 300. 0 to disable the layout (the default)
+         * @param edgeLength preferred length of an edge, e.g. 80
+         * @return this
+         * @see ExportPhase#LAYOUT
+         */
+        public Builder<V1, E1, G1> setForceLayout(int iterations, double edgeLength) {
+            if (iterations < 0) {
+                throw new IllegalArgumentException("iterations must not be negative: " + iterations);
+            }
+            if (!(edgeLength > 0)) {
+                throw new IllegalArgumentException("edgeLength must be positive: " + edgeLength);
+            }
+            this.layoutIterations = iterations;
+            this.layoutEdgeLength = edgeLength;
+            return this;
+        }
+
+        /**
+         * Reports the phases, counters and provider timings of every export to a listener.
+         * <p>
+         * The supplier is called once per export, so it may either create a listener per export or return one
+         * listener which handles concurrent exports. Independent of this setting, exports are reported as
+         * Flight Recorder events (com.github.systemdir.gml.Export and ExportPhase) while a recording enables them.
+         *
+         * @param exportListeners creates the listener of an export, null to disable (the default)
+         * @return this
+         */
+        public Builder<V1, E1, G1> setExportListener(@Nullable Supplier<? extends ExportListener> exportListeners) {
+            this.exportListeners = exportListeners;
+            return this;
+        }
+
         public YedGmlWriter<V1, E1, G1> build() {
             return new YedGmlWriter<>(this);
         }
+
+        /**
+         * @return a writer exporting the configured graphics as yEd GraphML instead of GML
+         * @see YedGraphmlWriter
+         */
+        public YedGraphmlWriter<V1, E1, G1> buildGraphml() {
+            return new YedGraphmlWriter<>(this);
+        }
     }
 
 
@@ -178,35 +561,144 @@ public class YedGmlWriter<V, E, G> {
             = new PrintLabels[]{PRINT_EDGE_LABELS, PRINT_VERTEX_LABELS, PRINT_GROUP_LABELS};
     public static final PrintLabels[] PRINT_NO_LABELS = new PrintLabels[0];
 
+    // rendered records are passed to the output once the buffer exceeds this size
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    // pre-encoded gml structure, line ends are the same as PrintWriter.println used to write
+    private static final byte[] NEWLINE = ascii(System.lineSeparator());
+    private static final byte[] CREATOR = ascii("Creator" + delim);
+    private static final byte[] VERSION = ascii("Version" + delim + version);
+    private static final byte[] GRAPH_START = lines("graph", "[");
+    private static final byte[] GRAPH_LABEL = lines(tab1 + "label" + delim + "\"\"");
+    private static final byte[] DIRECTED = lines(tab1 + "directed" + delim + "1");
+    private static final byte[] UNDIRECTED = lines(tab1 + "directed" + delim + "0");
+    private static final byte[] GRAPH_END = lines("]");
+    private static final byte[] NODE_START = lines(tab1 + "node", tab1 + "[");
+    private static final byte[] EDGE_START = lines(tab1 + "edge", tab1 + "[");
+    private static final byte[] END = lines(tab1 + "]");
+    private static final byte[] ID = ascii(tab2 + "id" + delim);
+    private static final byte[] LABEL = ascii(tab2 + "label" + delim);
+    private static final byte[] GID = ascii(tab2 + "gid" + delim);
+    private static final byte[] SOURCE = ascii(tab2 + "source" + delim);
+    private static final byte[] TARGET = ascii(tab2 + "target" + delim);
+    private static final byte[] IS_GROUP = lines(tab2 + "isGroup" + delim + "1");
+    // graphics of the overview of a sharded export for shards without group, and of the edges between shards
+    private static final NodeGraphicDefinition SHARD_GRAPHICS = new NodeGraphicDefinition.Builder().build();
+    // graphics of laid out nodes whose provider returned none, the position needs a graphics block
+    private static final NodeGraphicDefinition LAID_OUT_GRAPHICS = new NodeGraphicDefinition.Builder().build();
+    private static final EdgeGraphicDefinition LINK_GRAPHICS = new EdgeGraphicDefinition.Builder().build();
+    private static final EdgeGraphicDefinition DIRECTED_LINK_GRAPHICS = new EdgeGraphicDefinition.Builder()
+            .setTargetArrow(EdgeGraphicDefinition.ArrowType.DELTA).build();
+    // separates the ids in the fingerprint of a record, never part of UTF-8 text
+    private static final byte ID_SEPARATOR = (byte) 0xff;
+
+    private static byte[] lines(String... lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append(System.lineSeparator());
+        }
+        return ascii(sb.toString());
+    }
+
+    // intern - created by constructor from the group mapping
     @Nullable
-    private final Map<G, ? extends Set<V>> groupMapping;
-    // intern - created by constructor from groupMapping
+    private final GroupHierarchy<V, G> groups;
+    // set instead of groups if the groups are discovered per export
     @Nullable
-    private final Map<V, G> reversedGroupMapping;
+    private final Function<V, G> groupClassifier;
+    @Nullable
+    private final Function<G, G> groupParentProvider;
 
-    @NotNull
+    // null when the default id provider is used, see ExportSession
+    @Nullable
     private final Function<Object, String> vertexIDProvider;
     @NotNull
     private final Function<V, String> vertexLabelProvider;
-    @NotNull
+    @Nullable
     private final Function<? super E, String> edgeIDProvider;
     @NotNull
     private final Function<E, String> edgeLabelProvider;
     @NotNull
     private final YedGmlGraphicsProvider<V, E, G> graphProvider;
+    // the graphics provider if it looks up chunks of elements, null to call it per element
+    @Nullable
+    private final BatchGraphicsProvider<V, E, G> batchProvider;
+    private final int graphicsBatchSize;
     @NotNull
     private final Function<G, String> groupLabelProvider;
-    @NotNull
-    private final Function<? super G, String> groupIdProvider;
+    private final boolean identityIds;
+    // only set if ids are shared across exports
+    @Nullable
+    private final ConcurrentUniqueIntIdFunction<Object> sharedIdFunction;
 
     @NotNull
     private final EnumSet<PrintLabels> printLables;
+    private final boolean printVertexLabels;
+    private final boolean printEdgeLabels;
+    private final boolean printGroupLabels;
+    private final boolean internGraphics;
+    @Nullable
+    private final QuotedLabelCache labelCache;
+    @Nullable
+    private final RecordCache recordCache;
+    @Nullable
+    private final Predicate<? super V> vertexFilter;
+    @Nullable
+    private final Predicate<? super E> edgeFilter;
+
+    @Nullable
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    private final boolean gzip;
+    @Nullable
+    private final ExecutorService compressionExecutor;
+    private final int compressionThreads;
+    private final int compressionBlockSize;
+    @Nullable
+    private final Executor outputExecutor;
+    private final int outputBuffers;
+    private final int outputBufferSize;
+
+    @Nullable
+    private final Supplier<? extends ExportListener> exportListeners;
+
+    private final int maxShardSize;
+    private final boolean shardOverview;
+
+    // 0 without layout
+    private final int layoutIterations;
+    private final double layoutEdgeLength;
 
     public YedGmlWriter(Builder<V, E, G> builder) {
         this.graphProvider = builder.graphicsProvider;
-        this.printLables = builder.printLabels;
-
-        this.groupMapping = builder.groupMapping;
+        this.graphicsBatchSize = builder.graphicsBatchSize;
+        this.batchProvider = graphProvider instanceof BatchGraphicsProvider && graphicsBatchSize > 1
+                ? (BatchGraphicsProvider<V, E, G>) graphProvider
+                : null;
+        this.printLables = EnumSet.copyOf(builder.printLabels);
+        this.printVertexLabels = printLables.contains(PRINT_VERTEX_LABELS);
+        this.printEdgeLabels = printLables.contains(PRINT_EDGE_LABELS);
+        this.printGroupLabels = printLables.contains(PRINT_GROUP_LABELS);
+        this.internGraphics = builder.internGraphics;
+        this.labelCache = builder.labelCacheSize > 0 ? new QuotedLabelCache(builder.labelCacheSize) : null;
+        this.recordCache = builder.incremental ? new RecordCache() : null;
+        this.vertexFilter = builder.vertexFilter;
+        this.edgeFilter = builder.edgeFilter;
+        this.pool = builder.pool;
+        this.chunkSize = builder.chunkSize;
+        this.gzip = builder.gzip;
+        this.compressionExecutor = builder.compressionExecutor;
+        this.compressionThreads = builder.compressionThreads;
+        this.compressionBlockSize = builder.compressionBlockSize;
+        this.outputExecutor = builder.outputExecutor;
+        this.outputBuffers = builder.outputBuffers;
+        this.outputBufferSize = builder.outputBufferSize;
+        this.exportListeners = builder.exportListeners;
+        this.maxShardSize = builder.maxShardSize;
+        this.shardOverview = builder.shardOverview;
+        this.layoutIterations = builder.layoutIterations;
+        this.layoutEdgeLength = builder.layoutEdgeLength;
 
         this.vertexLabelProvider = builder.vertexLabelProvider != null
                 ? builder.vertexLabelProvider
@@ -215,197 +707,243 @@ public class YedGmlWriter<V, E, G> {
                 ? builder.edgeLabelProvider
                 : Objects::toString;
 
-        /*
-         * The same id function is used for all objects. Simplest way to prevent
-         * any duplicate ID problems.
-         */
-        UniqueIntIdFunction<Object> uniqueIdFunction = new UniqueIntIdFunction<>();
-
-        if (builder.vertexIDProvider != null) {
-            this.vertexIDProvider = builder.vertexIDProvider;
-        } else {
-
-            this.vertexIDProvider = uniqueIdFunction;
-        }
+        this.vertexIDProvider = builder.vertexIDProvider;
+        this.edgeIDProvider = builder.edgeIDProvider;
+        this.identityIds = builder.identityIds;
+        this.sharedIdFunction = builder.shareIds ? new ConcurrentUniqueIntIdFunction<>(identityIds) : null;
 
-        if (builder.edgeIDProvider != null) {
-            this.edgeIDProvider = builder.edgeIDProvider;
-        } else {
-            this.edgeIDProvider = uniqueIdFunction;
-        }
-
-        if (groupMapping != null) {
-            reversedGroupMapping = new HashMap<>();
-            for (Map.Entry<G, ? extends Set<V>> group : groupMapping.entrySet()) {
-                for (V grouped : group.getValue()) {
-                    reversedGroupMapping.put(grouped, group.getKey());
-                }
-            }
+        this.groups = builder.groupMapping != null
+                ? new GroupHierarchy<>(builder.groupMapping, builder.groupParentProvider)
+                : null;
+        this.groupClassifier = builder.groupClassifier;
+        this.groupParentProvider = builder.groupParentProvider;
+        if (groups != null || groupClassifier != null) {
             this.groupLabelProvider = builder.groupLabelProvider != null
                     ? builder.groupLabelProvider
                     : Objects::toString;
-            groupIdProvider = uniqueIdFunction;
         } else {
-            reversedGroupMapping = null;
-            groupIdProvider = uniqueIdFunction;
             groupLabelProvider = Objects::toString;
         }
     }
 
-    private String quoted(final String s) {
-        StringBuilder sb = new StringBuilder(s.length() + 2);
-        sb.append('"');
-        for (int i = 0; i < s.length(); i++) {
-            char ch = s.charAt(i);
-            switch (ch) {
-                case '"':
-                    sb.append("&quot;");
-                    break;
-                case '&':
-                    sb.append("&amp;");
-                default:
-                    sb.append(ch);
-            }
-        }
-        sb.append('"');
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static <T> ToIntFunction<T> intIdProvider(Function<T, String> idProvider) {
+        return idProvider instanceof ToIntFunction ? (ToIntFunction<T>) idProvider : null;
+    }
 
-        return sb.toString();
+    /**
+     * Calls the id provider, preferring the int variant which creates no String
+     */
+    private static <T> void assignId(Function<? super T, String> idProvider, @Nullable ToIntFunction<? super T> intIdProvider, T element) {
+        if (intIdProvider != null) {
+            intIdProvider.applyAsInt(element);
+        } else {
+            idProvider.apply(element);
+        }
     }
 
-    private void exportHeader(PrintWriter out) {
-        out.println("Creator" + delim + quoted(creator));
-        out.println("Version" + delim + version);
+    /**
+     * Wraps target according to the compression settings. The wrapper is finished but not closed by the session.
+     */
+    private OutputStream compressed(OutputStream target) throws IOException {
+        if (compressionExecutor != null) {
+            return new ParallelGzipOutputStream(target, compressionExecutor, compressionThreads, compressionBlockSize);
+        }
+        if (gzip) {
+            return new GZIPOutputStream(target, FLUSH_THRESHOLD);
+        }
+        return target;
     }
 
-    private void exportVertices(
-            PrintWriter out,
-            Graph<V, E> g) {
-        for (V vertex : g.vertexSet()) {
-            // dont print vertexes added as groups
-            if (groupMapping != null && groupMapping.containsKey(vertex)) {
-                continue;
-            }
+    /**
+     * @return the groups of the writer, or a new hierarchy discovering the groups of the graph if they are
+     * classified, null without groups
+     */
+    @Nullable
+    private GroupHierarchy<V, G> groupsOf(Graph<V, E> g) {
+        if (groupClassifier != null) {
+            return GroupHierarchy.classified(g.vertexSet(), groupClassifier, groupParentProvider);
+        }
+        return groups;
+    }
 
-            out.println(tab1 + "node");
-            out.println(tab1 + "[");
-            out.println(
-                    tab2 + "id" + delim + vertexIDProvider.apply(vertex));
+    /**
+     * @return groups without any member accepted by the vertex filter, counting the members of nested groups, null
+     * if there is no vertex filter
+     */
+    @Nullable
+    private Set<Object> findEmptyGroups() {
+        if (vertexFilter == null || groups == null) {
+            return null;
+        }
+        return groups.emptyGroups(vertexFilter);
+    }
 
-            boolean printVertexLabels = printLables.contains(PRINT_VERTEX_LABELS);
-            if (printVertexLabels) {
-                String label = vertexLabelProvider.apply(vertex);
-                out.println(tab2 + "label" + delim + quoted(label));
+    private boolean hasExportedMember(Set<V> groupElements) {
+        for (V member : groupElements) {
+            if (vertexFilter.test(member)) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            NodeGraphicDefinition definition = graphProvider.getVertexGraphics(vertex);
-            if (definition != null)
-                out.print(definition.toString(printVertexLabels));
+    /**
+     * @return true if the vertex is accepted by the filter. A vertex which is a group is exported as long as
+     * the group has members.
+     */
+    private boolean isExported(V vertex, @Nullable Set<Object> emptyGroups) {
+        if (vertexFilter == null) {
+            return true;
+        }
+        if (emptyGroups != null && groups.isGroup(vertex)) {
+            return !emptyGroups.contains(vertex);
+        }
+        return vertexFilter.test(vertex);
+    }
 
-            if (reversedGroupMapping != null) {
-                if (reversedGroupMapping.containsKey(vertex)) {
-                    out.println(tab2 + "gid" + delim + groupIdProvider.apply(reversedGroupMapping.get(vertex)));
-                }
-            }
+    private boolean isExported(E edge, V source, V target, @Nullable Set<Object> emptyGroups) {
+        return (edgeFilter == null || edgeFilter.test(edge)) && isExported(source, emptyGroups) && isExported(target, emptyGroups);
+    }
 
-            out.println(tab1 + "]");
+    /**
+     * @return true if the vertex is written as node: it is accepted by the filter and no group
+     */
+    private boolean isNode(V vertex, @Nullable GroupHierarchy<V, G> hierarchy) {
+        // dont print vertexes added as groups
+        if (hierarchy != null && hierarchy.isGroup(vertex)) {
+            return false;
         }
+        return vertexFilter == null || vertexFilter.test(vertex);
     }
 
-    private void exportGroups(PrintWriter out) {
-        if (groupMapping == null)
-            return;
+    /**
+     * @return the positions of the nodes of the graph, null if no layout is configured
+     */
+    @Nullable
+    private ForceLayout layout(Graph<V, E> g, @Nullable GroupHierarchy<V, G> hierarchy, @Nullable Set<Object> emptyGroups) {
+        if (layoutIterations == 0) {
+            return null;
+        }
+        return ForceLayout.compute(g, vertex -> isNode(vertex, hierarchy),
+                edge -> isExported(edge, g.getEdgeSource(edge), g.getEdgeTarget(edge), emptyGroups), hierarchy,
+                pool != null ? pool : ForkJoinPool.commonPool(), chunkSize, layoutIterations, layoutEdgeLength,
+                identityIds);
+    }
 
-        for (Map.Entry<G, ? extends Set<V>> groupEntry : groupMapping.entrySet()) {
-            G group = groupEntry.getKey();
-            out.println(tab1 + "node");
-            out.println(tab1 + "[");
-            out.println(
-                    tab2 + "id" + delim + groupIdProvider.apply(group));
+    /**
+     * @return the elements in consecutive lists of up to size elements
+     */
+    private static <T> Iterable<List<T>> batches(Iterable<T> elements, int size) {
+        return () -> new Iterator<List<T>>() {
+            private final Iterator<T> iterator = elements.iterator();
 
-            boolean printGroupLabels = printLables.contains(PRINT_GROUP_LABELS);
-            if (printGroupLabels) {
-                String label = groupLabelProvider.apply(group);
-                out.println(tab2 + "label" + delim + quoted(label));
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
             }
 
-            NodeGraphicDefinition definition = graphProvider.getGroupGraphics(group, groupEntry.getValue());
-            if (definition != null)
-                out.print(definition.toString(printGroupLabels));
+            @Override
+            public List<T> next() {
+                if (!iterator.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                // a new list per batch, parallel chunks keep them until rendered
+                List<T> batch = new ArrayList<>(size);
+                while (batch.size() < size && iterator.hasNext()) {
+                    batch.add(iterator.next());
+                }
+                return batch;
+            }
+        };
+    }
 
-            out.println(tab2 + "isGroup" + delim + "1");
+    private void exportHeader(GmlBuffer out) {
+        out.append(CREATOR).appendQuoted(creator).append(NEWLINE);
+        out.append(VERSION).append(NEWLINE);
+    }
 
-            out.println(tab1 + "]");
+    private void exportVertices(ExportSession session, Graph<V, E> g) throws IOException {
+        if (batchProvider != null) {
+            session.exportAll(batches(g.vertexSet(), graphicsBatchSize), graphicsBatchSize,
+                    (b, batch) -> session.exportVertexBatch(b, batch));
+            return;
         }
+        session.exportAll(g.vertexSet(), (b, vertex) -> session.exportVertex(b, vertex));
     }
 
-    private void exportEdges(PrintWriter out, Graph<V, E> g) {
-        for (E edge : g.edgeSet()) {
-            out.println(tab1 + "edge");
-            out.println(tab1 + "[");
-            String id = edgeIDProvider.apply(edge);
-            out.println(tab2 + "id" + delim + id);
-            String s = vertexIDProvider.apply(g.getEdgeSource(edge));
-            out.println(tab2 + "source" + delim + s);
-            String t = vertexIDProvider.apply(g.getEdgeTarget(edge));
-            out.println(tab2 + "target" + delim + t);
+    private void exportGroups(ExportSession session) throws IOException {
+        GroupHierarchy<V, G> hierarchy = session.hierarchy;
+        if (hierarchy == null)
+            return;
 
+        // rejects cycles of classified groups
+        hierarchy.link();
+        session.exportAll(hierarchy.groups(), (b, group) -> {
+            int index = hierarchy.indexOf(group);
+            session.exportGroup(b, group, hierarchy.members(index), index);
+        });
+    }
 
-            boolean printEdgeLabels = printLables.contains(PRINT_EDGE_LABELS);
+    private void exportEdges(ExportSession session, Graph<V, E> g) throws IOException {
+        if (batchProvider != null) {
+            session.exportAll(batches(g.edgeSet(), graphicsBatchSize), graphicsBatchSize,
+                    (b, batch) -> session.exportEdgeBatch(b, g, batch));
+            return;
+        }
+        session.exportAll(g.edgeSet(), (b, edge) -> session.exportEdge(b, edge, g.getEdgeSource(edge), g.getEdgeTarget(edge)));
+    }
 
-            if (printEdgeLabels) {
-                String label = edgeLabelProvider.apply(edge);
-                out.println(tab2 + "label" + delim + quoted(label));
+    private void export(OutputStream out, Graph<V, E> g, boolean directed, boolean compress) throws IOException {
+        ExportSession session = new ExportSession(out, directed, compress, groupsOf(g), null);
+        try {
+            // assign ids in vertex set iteration order
+            // the id provider hereby stores already "seen" objects
+            session.startPhase(ID_ASSIGNMENT);
+            session.assignVertexIds(g);
+            if (pool != null) {
+                session.assignIds(g);
             }
+            session.finishPhase(ID_ASSIGNMENT);
+            session.layout(g);
 
-            EdgeGraphicDefinition definition = graphProvider.getEdgeGraphics(edge, g.getEdgeSource(edge), g.getEdgeTarget(edge));
-            if (definition != null)
-                out.print(definition.toString(printEdgeLabels));
+            // export graph elements
+            session.startPhase(VERTICES);
+            exportVertices(session, g);
+            session.finishPhase(VERTICES);
+            session.startPhase(GROUPS);
+            exportGroups(session);
+            session.finishPhase(GROUPS);
+            session.startPhase(EDGES);
+            exportEdges(session, g);
+            session.finishPhase(EDGES);
+        } catch (IOException | RuntimeException | Error e) {
+            session.abort(e);
+            throw e;
+        }
 
+        // finish output operations
+        session.close();
+    }
 
-            out.println(tab1 + "]");
+    private void exportToWriter(Writer output, Graph<V, E> g, boolean directed) {
+        try {
+            export(new WriterOutputStream(output), g, directed, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    private void export(Writer output, Graph<V, E> g, boolean directed) {
-        PrintWriter out = new PrintWriter(output);
-
-        // assign ids in vertex set iteration order
-        // the id provider hereby stores already "seen" objects
-        g.vertexSet().forEach(vertexIDProvider::apply);
-
-        // print gml header
-        exportHeader(out);
-        out.println("graph");
-        out.println("[");
-
-        // print (empty graph label)
-        out.println(tab1 + "label" + delim + quoted(""));
-
-        // print gml is directed graph?
-        if (directed) {
-            out.println(tab1 + "directed" + delim + "1");
-        } else {
-            out.println(tab1 + "directed" + delim + "0");
-        }
-
-        // export graph elements
-        exportVertices(out, g);
-        exportGroups(out);
-        exportEdges(out, g);
-
-        // finish output operations
-        out.println("]");
-        out.flush();
-    }
-
     /**
      * Exports an undirected graph into a PLAIN text file in GML format.
      *
      * @param output the writer to which the graph to be exported
      * @param g the undirected graph to be exported
+     * @throws UncheckedIOException if writing to output fails
      */
     public void export(Writer output, UndirectedGraph<V, E> g) {
-        export(output, g, false);
+        exportToWriter(output, g, false);
     }
 
     /**
@@ -413,9 +951,1384 @@ public class YedGmlWriter<V, E, G> {
      *
      * @param output the writer to which the graph to be exported
      * @param g the directed graph to be exported
+     * @throws UncheckedIOException if writing to output fails
      */
     public void export(Writer output, DirectedGraph<V, E> g) {
-        export(output, g, true);
+        exportToWriter(output, g, true);
+    }
+
+    /**
+     * Exports an undirected graph as UTF-8 encoded GML.
+     * <p>
+     * Faster than {@link #export(Writer, UndirectedGraph)} as the output is encoded directly into a reused byte
+     * buffer. The stream is flushed but not closed. The output is compressed if configured, see
+     * {@link Builder#setGzipCompression(boolean)}.
+     *
+     * @param output the stream to which the graph to be exported
+     * @param g the undirected graph to be exported
+     * @throws IOException if writing to output fails
+     */
+    public void export(OutputStream output, UndirectedGraph<V, E> g) throws IOException {
+        export(output, g, false, true);
+    }
+
+    /**
+     * Exports a directed graph as UTF-8 encoded GML.
+     * <p>
+     * Faster than {@link #export(Writer, DirectedGraph)} as the output is encoded directly into a reused byte
+     * buffer. The stream is flushed but not closed. The output is compressed if configured, see
+     * {@link Builder#setGzipCompression(boolean)}.
+     *
+     * @param output the stream to which the graph to be exported
+     * @param g the directed graph to be exported
+     * @throws IOException if writing to output fails
+     */
+    public void export(OutputStream output, DirectedGraph<V, E> g) throws IOException {
+        export(output, g, true, true);
+    }
+
+    /**
+     * Exports an undirected graph as UTF-8 encoded GML to a blocking channel. The channel is not closed. The output is compressed if
+     * configured, see {@link Builder#setGzipCompression(boolean)}.
+     *
+     * @param output the channel to which the graph to be exported
+     * @param g the undirected graph to be exported
+     * @throws IOException if writing to output fails
+     */
+    public void export(WritableByteChannel output, UndirectedGraph<V, E> g) throws IOException {
+        export(new ChannelOutputStream(output), g, false, true);
+    }
+
+    /**
+     * Exports a directed graph as UTF-8 encoded GML to a blocking channel. The channel is not closed. The output is compressed if
+     * configured, see {@link Builder#setGzipCompression(boolean)}.
+     *
+     * @param output the channel to which the graph to be exported
+     * @param g the directed graph to be exported
+     * @throws IOException if writing to output fails
+     */
+    public void export(WritableByteChannel output, DirectedGraph<V, E> g) throws IOException {
+        export(new ChannelOutputStream(output), g, true, true);
+    }
+
+    /**
+     * Exports an undirected graph as UTF-8 encoded GML to a file.
+     * <p>
+     * Same as {@link #export(OutputStream, UndirectedGraph)} on {@link Files#newOutputStream}, except that the file is
+     * deleted if the export fails. An existing file is replaced. The output is compressed if configured, see
+     * {@link Builder#setGzipCompression(boolean)}.
+     *
+     * @param output the file to which the graph to be exported
+     * @param g the undirected graph to be exported
+     * @throws IOException if writing the file fails
+     */
+    public void export(Path output, UndirectedGraph<V, E> g) throws IOException {
+        exportFile(output, g, false);
+    }
+
+    /**
+     * Exports a directed graph as UTF-8 encoded GML to a file.
+     * <p>
+     * Same as {@link #export(OutputStream, DirectedGraph)} on {@link Files#newOutputStream}, except that the file is
+     * deleted if the export fails. An existing file is replaced. The output is compressed if configured, see
+     * {@link Builder#setGzipCompression(boolean)}.
+     *
+     * @param output the file to which the graph to be exported
+     * @param g the directed graph to be exported
+     * @throws IOException if writing the file fails
+     */
+    public void export(Path output, DirectedGraph<V, E> g) throws IOException {
+        exportFile(output, g, true);
+    }
+
+    private void exportFile(Path output, Graph<V, E> g, boolean directed) throws IOException {
+        try (OutputStream out = Files.newOutputStream(output)) {
+            export(out, g, directed, true);
+        } catch (IOException | RuntimeException | Error e) {
+            deleteFailed(output, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the file of a failed export once it is closed, so no partial file is left behind
+     */
+    static void deleteFailed(Path file, Throwable failure) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Exports an undirected graph as one GML file per shard, see {@link #exportShards(Path, DirectedGraph)}
+     */
+    public List<Path> exportShards(Path directory, UndirectedGraph<V, E> g) throws IOException {
+        return exportShards(directory, g, false);
+    }
+
+    /**
+     * Exports a directed graph as one GML file per shard, for graphs too large to be opened in yED as a whole.
+     * <p>
+     * Every group of {@link Builder#setGroups} is a shard, vertices without group form one more shard. Without
+     * groups the connected components are packed into shards, see {@link Builder#setShardOptions}. A shard
+     * contains its vertices, its group and the edges between them. Edges between shards are only part of the
+     * optional overview file, which has a node per shard and one edge, labelled with the amount of edges, per pair
+     * of connected shards.
+     * <p>
+     * All files share one id space, so an element has the same id in every file, and vertices keep the ids of a
+     * normal export. Graphics come from the same providers as in a normal export. The
+     * shards are written concurrently on the pool of {@link Builder#setParallel}, or the common pool if none is
+     * set, so the providers have to support concurrent calls. Each shard is reported to the export listener as
+     * export of its own.
+     *
+     * @param directory the directory the files are written to, created if missing. Files are named
+     * shard-&lt;index&gt;.gml and overview.gml, ".gz" is appended when compressed. Existing files are replaced,
+     * the file of a failed shard is deleted.
+     * @param g the directed graph to be exported
+     * @return the shard files in shard order, without the overview
+     * @throws IOException if writing a file fails
+     */
+    public List<Path> exportShards(Path directory, DirectedGraph<V, E> g) throws IOException {
+        return exportShards(directory, g, true);
+    }
+
+    private List<Path> exportShards(Path directory, Graph<V, E> g, boolean directed) throws IOException {
+        Files.createDirectories(directory);
+        Set<Object> emptyGroups = findEmptyGroups();
+        Predicate<V> vertexExported = vertex -> isExported(vertex, emptyGroups);
+        Predicate<E> edgeExported = edge -> isExported(edge, g.getEdgeSource(edge), g.getEdgeTarget(edge), emptyGroups);
+        GroupHierarchy<V, G> groups = groupsOf(g);
+        if (groups != null && groups.isClassified()) {
+            // the partition needs all groups up front
+            groups.classifyAll(vertexFilter);
+        }
+        ShardPartition<V, E, G> partition = groups != null
+                ? ShardPartition.byGroups(g, groups, emptyGroups, vertexExported, edgeExported, directed, identityIds)
+                : ShardPartition.byComponents(g, vertexExported, edgeExported, maxShardSize, directed, identityIds);
+
+        // all ids are assigned up front in the order of a normal export, so the shards only read them
+        ShardContext context = new ShardContext(sharedIdFunction != null ? sharedIdFunction : new UniqueIntIdFunction<>(identityIds),
+                groups, emptyGroups, layout(g, groups, emptyGroups));
+        assignShardIds(context.ids, g, partition);
+
+        String extension = gzip || compressionExecutor != null ? ".gml.gz" : ".gml";
+        List<Path> files = new ArrayList<>(partition.shards.size());
+        for (ShardPartition.Shard<V, E, G> shard : partition.shards) {
+            files.add(directory.resolve("shard-" + shard.index + extension));
+        }
+
+        // the largest shards start first, so the last running shard is a small one
+        List<ShardPartition.Shard<V, E, G>> bySize = new ArrayList<>(partition.shards);
+        bySize.sort((a, b) -> Integer.compare(b.vertices.size() + b.edges.size(), a.vertices.size() + a.edges.size()));
+        ForkJoinPool workers = pool != null ? pool : ForkJoinPool.commonPool();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(bySize.size());
+        // the first failure stops the other shards at their next element, all are reported
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        try {
+            for (ShardPartition.Shard<V, E, G> shard : bySize) {
+                Path file = files.get(shard.index);
+                tasks.add(workers.submit(() -> {
+                    try {
+                        exportShard(file, g, shard, directed, context);
+                    } catch (IOException | RuntimeException | Error e) {
+                        context.fail(e, failures);
+                    }
+                }));
+            }
+            if (shardOverview) {
+                exportOverview(directory.resolve("overview" + extension), partition, directed, context);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            context.fail(e, failures);
+        } finally {
+            // no shard may still be writing when the export returns
+            for (ForkJoinTask<?> task : tasks) {
+                task.quietlyJoin();
+            }
+        }
+
+        Throwable failure = failures.poll();
+        if (failure == null) {
+            return files;
+        }
+        for (Throwable other : failures) {
+            failure.addSuppressed(other);
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        throw (Error) failure;
+    }
+
+    private void assignShardIds(Function<Object, String> ids, Graph<V, E> g, ShardPartition<V, E, G> partition) {
+        ToIntFunction<Object> intIds = intIdProvider(ids);
+        if (vertexIDProvider == null) {
+            for (V vertex : g.vertexSet()) {
+                assignId(ids, intIds, vertex);
+            }
+        }
+        for (ShardPartition.Shard<V, E, G> shard : partition.shards) {
+            for (G group : shard.groups) {
+                assignId(ids, intIds, group);
+            }
+        }
+        if (edgeIDProvider == null) {
+            for (ShardPartition.Shard<V, E, G> shard : partition.shards) {
+                for (E edge : shard.edges) {
+                    assignId(ids, intIds, edge);
+                }
+            }
+        }
+        for (ShardPartition.Shard<V, E, G> shard : partition.shards) {
+            assignId(ids, intIds, shard.key());
+        }
+        for (ShardPartition.Link link : partition.links) {
+            assignId(ids, intIds, link);
+        }
+    }
+
+    private void exportShard(Path file, Graph<V, E> g, ShardPartition.Shard<V, E, G> shard, boolean directed,
+                             ShardContext context) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ExportSession session = new ExportSession(out, directed, true, context.groups, context);
+            try {
+                for (V vertex : shard.vertices) {
+                    context.checkAborted();
+                    session.node(vertex);
+                }
+                for (G group : shard.groups) {
+                    context.checkAborted();
+                    session.group(group, context.groups.members(context.groups.indexOf(group)));
+                }
+                for (E edge : shard.edges) {
+                    context.checkAborted();
+                    session.edge(edge, g.getEdgeSource(edge), g.getEdgeTarget(edge));
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                session.abort(e);
+                throw e;
+            }
+            session.close();
+        } catch (IOException | RuntimeException | Error e) {
+            deleteFailed(file, e);
+            throw e;
+        }
+    }
+
+    private void exportOverview(Path file, ShardPartition<V, E, G> partition, boolean directed,
+                                ShardContext context) throws IOException {
+        EdgeGraphicDefinition linkGraphics = directed ? DIRECTED_LINK_GRAPHICS : LINK_GRAPHICS;
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ExportSession session = new ExportSession(out, directed, true, context.groups, context);
+            try {
+                for (ShardPartition.Shard<V, E, G> shard : partition.shards) {
+                    String name;
+                    NodeGraphicDefinition graphics;
+                    if (shard.group != null) {
+                        name = groupLabelProvider.apply(shard.group);
+                        graphics = graphProvider.getGroupGraphics(shard.group, context.groups.members(context.groups.indexOf(shard.group)));
+                    } else {
+                        name = "shard " + shard.index;
+                        graphics = SHARD_GRAPHICS;
+                    }
+                    session.overviewNode(shard.key(), name + " (" + shard.vertices.size() + ")", graphics);
+                }
+                for (ShardPartition.Link link : partition.links) {
+                    session.overviewEdge(link, partition.shards.get(link.source).key(),
+                            partition.shards.get(link.target).key(), Long.toString(link.count), linkGraphics);
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                session.abort(e);
+                throw e;
+            }
+            session.close();
+        } catch (IOException | RuntimeException | Error e) {
+            deleteFailed(file, e);
+            throw e;
+        }
+    }
+
+    /**
+     * State shared by the sessions of a sharded export
+     */
+    private final class ShardContext {
+        @NotNull
+        private final Function<Object, String> ids;
+        @Nullable
+        private final GroupHierarchy<V, G> groups;
+        @Nullable
+        private final Set<Object> emptyGroups;
+        // the layout of the whole graph, so the shards fit together
+        @Nullable
+        private final ForceLayout layout;
+        // set by the first failed shard or overview
+        private volatile boolean aborted;
+
+        private ShardContext(@NotNull Function<Object, String> ids, @Nullable GroupHierarchy<V, G> groups,
+                             @Nullable Set<Object> emptyGroups, @Nullable ForceLayout layout) {
+            this.ids = ids;
+            this.groups = groups;
+            this.emptyGroups = emptyGroups;
+            this.layout = layout;
+        }
+
+        /**
+         * Stops a shard once another one failed. Its file is deleted like the one of a failed shard.
+         */
+        private void checkAborted() {
+            if (aborted) {
+                throw new CancellationException("sharded export failed");
+            }
+        }
+
+        /**
+         * Aborts the export, a shard stopped by {@link #checkAborted()} is not reported as failure of its own
+         */
+        private void fail(Throwable failure, Queue<Throwable> failures) {
+            if (!(failure instanceof CancellationException && aborted)) {
+                failures.add(failure);
+            }
+            aborted = true;
+        }
+    }
+
+    /**
+     * Opens a push based export: every pushed element is rendered right away, so no graph has to be built first.
+     * <p>
+     * Group membership of vertices comes from {@link Builder#setGroups}. As with a graph export, vertices which are
+     * groups themselves are not written as normal nodes. Elements are buffered and passed to output in chunks of
+     * about 64KB; the memory used by a session stays constant when id providers are set which do not store the
+     * elements (e.g. using database keys), the default id provider keeps every element until the session is closed.
+     *
+     * @param output the stream to which the graph is written. It is flushed but not closed by {@link ExportSession#close()}
+     * @param directed true if the graph is directed
+     * @return the session, which must be closed to complete the GML file
+     * @throws IOException if writing the header fails
+     */
+    public ExportSession openSession(OutputStream output, boolean directed) throws IOException {
+        return new ExportSession(output, directed, true, groups, null);
+    }
+
+    /**
+     * Opens a push based export to a blocking channel, see {@link #openSession(OutputStream, boolean)}
+     */
+    public ExportSession openSession(WritableByteChannel output, boolean directed) throws IOException {
+        return new ExportSession(new ChannelOutputStream(output), directed, true, groups, null);
+    }
+
+    /**
+     * Opens a push based export to a writer, see {@link #openSession(OutputStream, boolean)}
+     */
+    public ExportSession openSession(Writer output, boolean directed) throws IOException {
+        return new ExportSession(new WriterOutputStream(output), directed, false, groups, null);
+    }
+
+    /**
+     * Starts a graph export which renders only when asked to, see {@link SteppedExport}
+     *
+     * @param output receives the rendered chunks
+     */
+    SteppedExport steppedExport(OutputStream output, Graph<V, E> g, boolean directed) throws IOException {
+        return new SteppedExport(output, g, directed);
+    }
+
+    /**
+     * A graph export driven by the consumer of its output: each {@link #step()} renders elements until a chunk of
+     * about 64KB was passed to the output, so no more than that is rendered ahead. The output is the same as of
+     * {@link #export(OutputStream, DirectedGraph)}; elements are rendered sequentially, also if the writer is
+     * parallel, and the graphics provider is called per element.
+     * <p>
+     * This class is NOT thread safe, but steps may run on different threads one after the other.
+     */
+    final class SteppedExport {
+        @NotNull
+        private final Graph<V, E> g;
+        @NotNull
+        private final ExportSession session;
+        // the phase of the next step, null when finished
+        @Nullable
+        private ExportPhase phase = ID_ASSIGNMENT;
+        private Iterator<V> vertices;
+        private int nextGroup;
+        private Iterator<E> edges;
+
+        private SteppedExport(OutputStream output, Graph<V, E> g, boolean directed) throws IOException {
+            this.g = g;
+            this.session = new ExportSession(output, directed, true, groupsOf(g), null);
+        }
+
+        /**
+         * Renders until a chunk was passed to the output or the export is complete
+         *
+         * @return false if the export is complete, the output then received the end of the file
+         * @throws IOException if writing to the output fails, the export is aborted then
+         */
+        boolean step() throws IOException {
+            try {
+                long written = session.bytesWritten;
+                while (phase != null && session.bytesWritten == written) {
+                    advance();
+                }
+                return phase != null;
+            } catch (IOException | RuntimeException | Error e) {
+                phase = null;
+                // a failed close already reported the failure
+                if (!session.closed) {
+                    session.abort(e);
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Abandons the export, e.g. when its consumer cancelled
+         */
+        void cancel(Throwable reason) {
+            if (phase != null) {
+                phase = null;
+                session.abort(reason);
+            }
+        }
+
+        /**
+         * Renders the next element, or moves on to the next phase
+         */
+        private void advance() throws IOException {
+            switch (phase) {
+                case ID_ASSIGNMENT:
+                    session.startPhase(ID_ASSIGNMENT);
+                    session.assignVertexIds(g);
+                    session.finishPhase(ID_ASSIGNMENT);
+                    session.layout(g);
+                    vertices = g.vertexSet().iterator();
+                    session.startPhase(VERTICES);
+                    phase = VERTICES;
+                    break;
+                case VERTICES:
+                    if (vertices.hasNext()) {
+                        session.exportVertex(session.buffer, vertices.next());
+                        session.flushIfFull();
+                        break;
+                    }
+                    session.finishPhase(VERTICES);
+                    if (session.hierarchy != null) {
+                        session.hierarchy.link();
+                    }
+                    session.startPhase(GROUPS);
+                    phase = GROUPS;
+                    break;
+                case GROUPS:
+                    GroupHierarchy<V, G> hierarchy = session.hierarchy;
+                    if (hierarchy != null && nextGroup < hierarchy.size()) {
+                        int index = nextGroup++;
+                        session.exportGroup(session.buffer, hierarchy.group(index), hierarchy.members(index), index);
+                        session.flushIfFull();
+                        break;
+                    }
+                    session.finishPhase(GROUPS);
+                    edges = g.edgeSet().iterator();
+                    session.startPhase(EDGES);
+                    phase = EDGES;
+                    break;
+                case EDGES:
+                    if (edges.hasNext()) {
+                        E edge = edges.next();
+                        session.exportEdge(session.buffer, edge, g.getEdgeSource(edge), g.getEdgeTarget(edge));
+                        session.flushIfFull();
+                        break;
+                    }
+                    session.finishPhase(EDGES);
+                    phase = null;
+                    session.close();
+                    break;
+                default:
+                    throw new IllegalStateException("unexpected phase " + phase);
+            }
+        }
     }
 
+    /**
+     * A running export, see {@link #openSession(OutputStream, boolean)}.
+     * <p>
+     * This class is NOT thread safe.
+     */
+    public final class ExportSession implements Closeable {
+        @NotNull
+        private final OutputStream out;
+        // writes the sink on the output executor, null if the sink is written directly
+        @Nullable
+        private final AsyncOutputStream async;
+        @NotNull
+        private final GmlBuffer buffer = new GmlBuffer(FLUSH_THRESHOLD + FLUSH_THRESHOLD / 4);
+        // the registry lives for one export only, so styles of old exports are not kept reachable
+        @Nullable
+        private final GraphicDefinitionRegistry registry = internGraphics ? new GraphicDefinitionRegistry() : null;
+        private boolean closed;
+
+        // listeners of this export, statistics are only collected if there are any
+        @NotNull
+        private final ExportListener[] listeners;
+        private final boolean timed;
+        private final long startNanos;
+        private final long[] phaseNanos = new long[ExportPhase.values().length];
+        private long phaseStart;
+        private long idsAssigned;
+        private long bytesWritten;
+        // updated by the rendering threads
+        private final LongAdder vertexCount = new LongAdder();
+        private final LongAdder groupCount = new LongAdder();
+        private final LongAdder edgeCount = new LongAdder();
+        private final LongAdder graphicsNanos = new LongAdder();
+        private final LongAdder labelNanos = new LongAdder();
+
+        // groups without any member accepted by the vertex filter, null if there is no vertex filter
+        @Nullable
+        private final Set<Object> emptyGroups;
+
+        // records of the last export, null if not incremental or another export is using them
+        @Nullable
+        private final RecordCache records;
+        private final int generation;
+        // false for the sessions of a sharded export, which already run in parallel
+        private final boolean parallel;
+
+        /*
+         * The same id function is used for all objects. Simplest way to prevent
+         * any duplicate ID problems.
+         */
+        @NotNull
+        private final Function<Object, String> vertexIds;
+        @NotNull
+        private final Function<? super E, String> edgeIds;
+        @NotNull
+        private final Function<? super G, String> groupIds;
+        @NotNull
+        private final Function<Object, String> uniqueIds;
+        // set if the id providers also offer int ids, which are written without creating Strings
+        @Nullable
+        private final ToIntFunction<Object> vertexIntIds;
+        @Nullable
+        private final ToIntFunction<? super E> edgeIntIds;
+        @Nullable
+        private final ToIntFunction<? super G> groupIntIds;
+        @Nullable
+        private final ToIntFunction<Object> uniqueIntIds;
+        // the groups of the export, discovered while writing if classified
+        @Nullable
+        private final GroupHierarchy<V, G> hierarchy;
+        // int ids of the groups by hierarchy index, -1 until first used. Null without int ids
+        @Nullable
+        private final int[] groupIdCache;
+        // positions of the nodes and groups, null if the export is not laid out
+        @Nullable
+        private ForceLayout layout;
+
+        /**
+         * @param hierarchy the groups of the export, null without groups
+         * @param shard ids and empty groups of the sharded export the session writes a file of, null for a
+         * normal export
+         */
+        private ExportSession(@NotNull OutputStream target, boolean directed, boolean compress,
+                              @Nullable GroupHierarchy<V, G> hierarchy, @Nullable ShardContext shard) throws IOException {
+            // the sink is written on the executor, compression stays on the rendering side
+            this.async = outputExecutor != null && shard == null
+                    ? new AsyncOutputStream(target, outputExecutor, outputBuffers, outputBufferSize)
+                    : null;
+            OutputStream sink = async != null ? async : target;
+            this.out = compress ? compressed(sink) : sink;
+
+            // ids are scoped to this export unless shared ids are requested
+            Function<Object, String> uniqueIdFunction;
+            if (shard != null) {
+                uniqueIdFunction = shard.ids;
+            } else if (sharedIdFunction != null) {
+                uniqueIdFunction = sharedIdFunction;
+            } else {
+                uniqueIdFunction = new UniqueIntIdFunction<>(identityIds);
+            }
+            this.uniqueIds = uniqueIdFunction;
+            this.vertexIds = vertexIDProvider != null ? vertexIDProvider : uniqueIdFunction;
+            this.edgeIds = edgeIDProvider != null ? edgeIDProvider : uniqueIdFunction;
+            this.groupIds = uniqueIdFunction;
+            this.vertexIntIds = intIdProvider(vertexIds);
+            this.edgeIntIds = intIdProvider(edgeIds);
+            this.groupIntIds = intIdProvider(groupIds);
+            this.uniqueIntIds = intIdProvider(uniqueIds);
+            this.hierarchy = hierarchy;
+            // classified groups of a graph export are only discovered later, their ids are not cached
+            if (groupIntIds != null && hierarchy != null && hierarchy.size() > 0) {
+                groupIdCache = new int[hierarchy.size()];
+                Arrays.fill(groupIdCache, -1);
+            } else {
+                groupIdCache = null;
+            }
+            this.emptyGroups = shard != null ? shard.emptyGroups : findEmptyGroups();
+            this.parallel = pool != null && shard == null;
+            this.layout = shard != null ? shard.layout : null;
+
+            this.listeners = createListeners();
+            this.timed = listeners.length > 0;
+            this.startNanos = timed ? System.nanoTime() : 0;
+            for (ExportListener listener : listeners) {
+                listener.exportStarted(directed);
+            }
+
+            // print gml header
+            exportHeader(buffer);
+            buffer.append(GRAPH_START);
+
+            // print (empty graph label)
+            buffer.append(GRAPH_LABEL);
+
+            // print gml is directed graph?
+            buffer.append(directed ? DIRECTED : UNDIRECTED);
+            flushIfFull();
+
+            this.records = shard == null && recordCache != null && recordCache.acquire() ? recordCache : null;
+            this.generation = records != null ? records.generation() : 0;
+        }
+
+        /**
+         * Writes a vertex, unless it is rejected by the vertex filter
+         */
+        public void node(V vertex) throws IOException {
+            checkOpen();
+            exportVertex(buffer, vertex);
+            flushIfFull();
+        }
+
+        /**
+         * Writes a group node, unless the vertex filter rejects all of its vertices
+         *
+         * @param group the group
+         * @param groupElements the vertices of the group, passed to {@link YedGmlGraphicsProvider#getGroupGraphics}
+         */
+        public void group(G group, Set<V> groupElements) throws IOException {
+            checkOpen();
+            exportGroup(buffer, group, groupElements, hierarchy != null ? hierarchy.indexOf(group) : -1);
+            flushIfFull();
+        }
+
+        /**
+         * Writes an edge, unless it or one of its vertices is filtered out. The vertices do not need to be written
+         * before.
+         */
+        public void edge(E edge, V source, V target) throws IOException {
+            checkOpen();
+            exportEdge(buffer, edge, source, target);
+            flushIfFull();
+        }
+
+        /**
+         * Passes all buffered records to the output and flushes it
+         */
+        public void flush() throws IOException {
+            checkOpen();
+            write(buffer);
+            out.flush();
+        }
+
+        /**
+         * Completes the GML file and flushes the output. Does nothing if already closed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+
+            try {
+                buffer.append(GRAPH_END);
+                write(buffer);
+                if (out instanceof GZIPOutputStream) {
+                    ((GZIPOutputStream) out).finish();
+                } else if (out instanceof ParallelGzipOutputStream) {
+                    ((ParallelGzipOutputStream) out).finish();
+                }
+                out.flush();
+            } catch (IOException | RuntimeException | Error e) {
+                if (async != null)
+                    async.cancel();
+                exportFailed(e);
+                if (records != null)
+                    records.release(false);
+                throw e;
+            }
+            if (records != null)
+                records.release(true);
+
+            if (timed) {
+                ExportStatistics statistics = new ExportStatistics(vertexCount.sum(), groupCount.sum(),
+                        edgeCount.sum(), bytesWritten, phaseNanos, graphicsNanos.sum(), labelNanos.sum(),
+                        System.nanoTime() - startNanos);
+                for (ExportListener listener : listeners) {
+                    listener.exportFinished(statistics);
+                }
+            }
+        }
+
+        /**
+         * Abandons the export after a failure, stops background compression
+         */
+        private void abort(Throwable failure) {
+            closed = true;
+            if (out instanceof ParallelGzipOutputStream) {
+                ((ParallelGzipOutputStream) out).cancel();
+            }
+            if (async != null) {
+                // the caller's stream is not written anymore once the export failed
+                async.cancel();
+            }
+            if (records != null)
+                records.release(false);
+            exportFailed(failure);
+        }
+
+        private ExportListener[] createListeners() {
+            ExportListener custom = exportListeners != null ? exportListeners.get() : null;
+            ExportListener jfr = JfrSupport.listener();
+            if (custom == null) {
+                return jfr == null ? new ExportListener[0] : new ExportListener[]{jfr};
+            }
+            return jfr == null ? new ExportListener[]{custom} : new ExportListener[]{custom, jfr};
+        }
+
+        private void exportFailed(Throwable failure) {
+            for (ExportListener listener : listeners) {
+                listener.exportFailed(failure);
+            }
+        }
+
+        private void startPhase(ExportPhase phase) {
+            if (!timed)
+                return;
+            for (ExportListener listener : listeners) {
+                listener.phaseStarted(phase);
+            }
+            phaseStart = System.nanoTime();
+        }
+
+        private void finishPhase(ExportPhase phase) {
+            if (!timed)
+                return;
+            long nanos = System.nanoTime() - phaseStart;
+            phaseNanos[phase.ordinal()] = nanos;
+            long elements;
+            switch (phase) {
+                case ID_ASSIGNMENT:
+                    elements = idsAssigned;
+                    break;
+                case LAYOUT:
+                    elements = layout != null ? layout.size() : 0;
+                    break;
+                case VERTICES:
+                    elements = vertexCount.sum();
+                    break;
+                case GROUPS:
+                    elements = groupCount.sum();
+                    break;
+                default:
+                    elements = edgeCount.sum();
+            }
+            for (ExportListener listener : listeners) {
+                listener.phaseFinished(phase, elements, nanos);
+            }
+        }
+
+        private boolean isExported(V vertex) {
+            return YedGmlWriter.this.isExported(vertex, emptyGroups);
+        }
+
+        private boolean isExported(E edge, V source, V target) {
+            return YedGmlWriter.this.isExported(edge, source, target, emptyGroups);
+        }
+
+        /**
+         * Lays out the nodes of the graph before they are rendered, if configured
+         */
+        private void layout(Graph<V, E> g) {
+            if (layoutIterations == 0)
+                return;
+            startPhase(LAYOUT);
+            layout = YedGmlWriter.this.layout(g, hierarchy, emptyGroups);
+            finishPhase(LAYOUT);
+        }
+
+        private void assignVertexIds(Graph<V, E> g) {
+            for (V vertex : g.vertexSet()) {
+                assignId(vertexIds, vertexIntIds, vertex);
+                idsAssigned++;
+            }
+        }
+
+        /**
+         * Assigns the ids in the same order a sequential export would, so a parallel export which only reads the ids
+         * creates the same output.
+         */
+        private void assignIds(Graph<V, E> g) {
+            if (hierarchy != null) {
+                for (V vertex : g.vertexSet()) {
+                    if (hierarchy.isGroup(vertex) || !isExported(vertex)) {
+                        continue;
+                    }
+                    // discovers classified groups, so the parallel renderers only read the hierarchy
+                    int group = hierarchy.classify(vertex);
+                    if (group >= 0) {
+                        assignId(groupIds, groupIntIds, hierarchy.group(group));
+                        idsAssigned++;
+                    }
+                }
+                for (int i = 0; i < hierarchy.size(); i++) {
+                    G group = hierarchy.group(i);
+                    if (emptyGroups != null && emptyGroups.contains(group)) {
+                        continue;
+                    }
+                    assignId(groupIds, groupIntIds, group);
+                    idsAssigned++;
+                    // the gid is written right after the id
+                    if (hierarchy.parent(i) >= 0) {
+                        assignId(groupIds, groupIntIds, hierarchy.group(hierarchy.parent(i)));
+                        idsAssigned++;
+                    }
+                }
+            }
+            for (E edge : g.edgeSet()) {
+                if (!isExported(edge, g.getEdgeSource(edge), g.getEdgeTarget(edge))) {
+                    continue;
+                }
+                assignId(edgeIds, edgeIntIds, edge);
+                idsAssigned++;
+            }
+        }
+
+        private void appendVertexId(GmlBuffer buffer, V vertex) {
+            if (vertexIntIds != null) {
+                buffer.appendInt(vertexIntIds.applyAsInt(vertex));
+            } else {
+                buffer.appendUtf8(vertexIds.apply(vertex));
+            }
+        }
+
+        private void appendEdgeId(GmlBuffer buffer, E edge) {
+            if (edgeIntIds != null) {
+                buffer.appendInt(edgeIntIds.applyAsInt(edge));
+            } else {
+                buffer.appendUtf8(edgeIds.apply(edge));
+            }
+        }
+
+        private void appendGroupId(GmlBuffer buffer, G group) {
+            if (groupIntIds != null) {
+                buffer.appendInt(groupIntIds.applyAsInt(group));
+            } else {
+                buffer.appendUtf8(groupIds.apply(group));
+            }
+        }
+
+        /**
+         * Appends the id of a group of the hierarchy, an int id is looked up once per session
+         */
+        private void appendGroupId(GmlBuffer buffer, int index) {
+            if (groupIdCache == null || index >= groupIdCache.length) {
+                appendGroupId(buffer, hierarchy.group(index));
+                return;
+            }
+            int id = groupIdCache[index];
+            if (id < 0) {
+                // concurrent renderers store the same id
+                id = groupIntIds.applyAsInt(hierarchy.group(index));
+                groupIdCache[index] = id;
+            }
+            buffer.appendInt(id);
+        }
+
+        private boolean isNode(V vertex) {
+            return YedGmlWriter.this.isNode(vertex, hierarchy);
+        }
+
+        private void exportVertex(GmlBuffer buffer, V vertex) {
+            if (!isNode(vertex)) {
+                return;
+            }
+
+            long start = timed ? System.nanoTime() : 0;
+            NodeGraphicDefinition definition = graphProvider.getVertexGraphics(vertex);
+            if (timed)
+                graphicsNanos.add(System.nanoTime() - start);
+
+            writeVertex(buffer, vertex, definition);
+        }
+
+        /**
+         * Exports a chunk of vertices, asking the batch provider for the graphics of the whole chunk at once
+         */
+        private void exportVertexBatch(GmlBuffer buffer, List<V> vertices) {
+            List<V> nodes = new ArrayList<>(vertices.size());
+            for (V vertex : vertices) {
+                if (isNode(vertex)) {
+                    nodes.add(vertex);
+                }
+            }
+            if (nodes.isEmpty()) {
+                return;
+            }
+
+            long start = timed ? System.nanoTime() : 0;
+            List<NodeGraphicDefinition> definitions = batchProvider.getVertexGraphicsBatch(nodes);
+            if (timed)
+                graphicsNanos.add(System.nanoTime() - start);
+            checkBatchSize(definitions, nodes);
+
+            for (int i = 0; i < nodes.size(); i++) {
+                writeVertex(buffer, nodes.get(i), definitions.get(i));
+            }
+        }
+
+        private void writeVertex(GmlBuffer buffer, V vertex, NodeGraphicDefinition definition) {
+            String label = null;
+            if (printVertexLabels) {
+                long start = timed ? System.nanoTime() : 0;
+                label = vertexLabelProvider.apply(vertex);
+                if (timed)
+                    labelNanos.add(System.nanoTime() - start);
+            }
+
+            int group = hierarchy != null ? hierarchy.classify(vertex) : -1;
+            int node = layout != null ? layout.indexOf(vertex) : -1;
+
+            int recordStart = buffer.size();
+            byte[] ids = null;
+            if (records != null) {
+                appendVertexId(buffer, vertex);
+                if (group >= 0) {
+                    buffer.append(ID_SEPARATOR);
+                    appendGroupId(buffer, group);
+                }
+                if (node >= 0) {
+                    // a moved node is rendered again
+                    buffer.append(ID_SEPARATOR).appendDouble(layout.x(node));
+                    buffer.append(ID_SEPARATOR).appendDouble(layout.y(node));
+                }
+                if (copyRecord(records.vertices, vertex, buffer, recordStart, label, definition)) {
+                    if (timed)
+                        vertexCount.increment();
+                    return;
+                }
+                ids = takeIds(buffer, recordStart);
+            }
+
+            buffer.append(NODE_START);
+            buffer.append(ID);
+            appendVertexId(buffer, vertex);
+            buffer.append(NEWLINE);
+
+            if (printVertexLabels) {
+                appendLabel(buffer, label);
+            }
+
+            if (node >= 0) {
+                positionedGraphics(definition, printVertexLabels).appendTo(buffer, printVertexLabels,
+                        layout.x(node), layout.y(node));
+            } else {
+                appendGraphics(buffer, definition, printVertexLabels);
+            }
+
+            if (group >= 0) {
+                buffer.append(GID);
+                appendGroupId(buffer, group);
+                buffer.append(NEWLINE);
+            }
+
+            buffer.append(END);
+            if (ids != null)
+                storeRecord(records.vertices, vertex, ids, label, definition, buffer, recordStart);
+            if (timed)
+                vertexCount.increment();
+        }
+
+        /**
+         * @param index index of the group in the hierarchy, -1 for a group unknown to it
+         */
+        private void exportGroup(GmlBuffer buffer, G group, Set<V> groupElements, int index) {
+            // classified groups are only discovered by exported vertices
+            if (vertexFilter != null && (index < 0
+                    ? !hasExportedMember(groupElements)
+                    : emptyGroups != null && emptyGroups.contains(group))) {
+                return;
+            }
+
+            String label = null;
+            if (printGroupLabels) {
+                long start = timed ? System.nanoTime() : 0;
+                label = groupLabelProvider.apply(group);
+                if (timed)
+                    labelNanos.add(System.nanoTime() - start);
+            }
+
+            long start = timed ? System.nanoTime() : 0;
+            NodeGraphicDefinition definition = graphProvider.getGroupGraphics(group, groupElements);
+            if (timed)
+                graphicsNanos.add(System.nanoTime() - start);
+
+            int parent = index >= 0 ? hierarchy.parent(index) : -1;
+            boolean laidOut = layout != null && layout.hasBounds(index);
+
+            int recordStart = buffer.size();
+            byte[] ids = null;
+            if (records != null) {
+                appendGroupId(buffer, group);
+                if (parent >= 0) {
+                    buffer.append(ID_SEPARATOR);
+                    appendGroupId(buffer, parent);
+                }
+                if (laidOut) {
+                    buffer.append(ID_SEPARATOR).appendDouble(layout.groupX(index));
+                    buffer.append(ID_SEPARATOR).appendDouble(layout.groupY(index));
+                    buffer.append(ID_SEPARATOR).appendDouble(layout.groupWidth(index));
+                    buffer.append(ID_SEPARATOR).appendDouble(layout.groupHeight(index));
+                }
+                if (copyRecord(records.groups, group, buffer, recordStart, label, definition)) {
+                    if (timed)
+                        groupCount.increment();
+                    return;
+                }
+                ids = takeIds(buffer, recordStart);
+            }
+
+            buffer.append(NODE_START);
+            buffer.append(ID);
+            appendGroupId(buffer, group);
+            buffer.append(NEWLINE);
+
+            if (printGroupLabels) {
+                appendLabel(buffer, label);
+            }
+
+            if (laidOut) {
+                positionedGraphics(definition, printGroupLabels).appendTo(buffer, printGroupLabels,
+                        layout.groupX(index), layout.groupY(index), layout.groupWidth(index), layout.groupHeight(index));
+            } else {
+                appendGraphics(buffer, definition, printGroupLabels);
+            }
+
+            if (parent >= 0) {
+                buffer.append(GID);
+                appendGroupId(buffer, parent);
+                buffer.append(NEWLINE);
+            }
+
+            buffer.append(IS_GROUP);
+
+            buffer.append(END);
+            if (ids != null)
+                storeRecord(records.groups, group, ids, label, definition, buffer, recordStart);
+            if (timed)
+                groupCount.increment();
+        }
+
+        private void exportEdge(GmlBuffer buffer, E edge, V source, V target) {
+            if (!isExported(edge, source, target)) {
+                return;
+            }
+
+            long start = timed ? System.nanoTime() : 0;
+            EdgeGraphicDefinition definition = graphProvider.getEdgeGraphics(edge, source, target);
+            if (timed)
+                graphicsNanos.add(System.nanoTime() - start);
+
+            writeEdge(buffer, edge, source, target, definition);
+        }
+
+        /**
+         * Exports a chunk of edges, asking the batch provider for the graphics of the whole chunk at once
+         */
+        private void exportEdgeBatch(GmlBuffer buffer, Graph<V, E> g, List<E> edges) {
+            List<E> exported = new ArrayList<>(edges.size());
+            List<V> sources = new ArrayList<>(edges.size());
+            List<V> targets = new ArrayList<>(edges.size());
+            for (E edge : edges) {
+                V source = g.getEdgeSource(edge);
+                V target = g.getEdgeTarget(edge);
+                if (isExported(edge, source, target)) {
+                    exported.add(edge);
+                    sources.add(source);
+                    targets.add(target);
+                }
+            }
+            if (exported.isEmpty()) {
+                return;
+            }
+
+            long start = timed ? System.nanoTime() : 0;
+            List<EdgeGraphicDefinition> definitions = batchProvider.getEdgeGraphicsBatch(exported, sources, targets);
+            if (timed)
+                graphicsNanos.add(System.nanoTime() - start);
+            checkBatchSize(definitions, exported);
+
+            for (int i = 0; i < exported.size(); i++) {
+                writeEdge(buffer, exported.get(i), sources.get(i), targets.get(i), definitions.get(i));
+            }
+        }
+
+        private void checkBatchSize(List<?> definitions, List<?> elements) {
+            if (definitions.size() != elements.size()) {
+                throw new IllegalStateException("batch graphics provider returned " + definitions.size()
+                        + " definitions for " + elements.size() + " elements");
+            }
+        }
+
+        private void writeEdge(GmlBuffer buffer, E edge, V source, V target, EdgeGraphicDefinition definition) {
+            String label = null;
+            if (printEdgeLabels) {
+                long start = timed ? System.nanoTime() : 0;
+                label = edgeLabelProvider.apply(edge);
+                if (timed)
+                    labelNanos.add(System.nanoTime() - start);
+            }
+
+            int recordStart = buffer.size();
+            byte[] ids = null;
+            if (records != null) {
+                appendEdgeId(buffer, edge);
+                buffer.append(ID_SEPARATOR);
+                appendVertexId(buffer, source);
+                buffer.append(ID_SEPARATOR);
+                appendVertexId(buffer, target);
+                if (copyRecord(records.edges, edge, buffer, recordStart, label, definition)) {
+                    if (timed)
+                        edgeCount.increment();
+                    return;
+                }
+                ids = takeIds(buffer, recordStart);
+            }
+
+            buffer.append(EDGE_START);
+            buffer.append(ID);
+            appendEdgeId(buffer, edge);
+            buffer.append(NEWLINE);
+            buffer.append(SOURCE);
+            appendVertexId(buffer, source);
+            buffer.append(NEWLINE);
+            buffer.append(TARGET);
+            appendVertexId(buffer, target);
+            buffer.append(NEWLINE);
+
+            if (printEdgeLabels) {
+                appendLabel(buffer, label);
+            }
+
+            appendGraphics(buffer, definition, printEdgeLabels);
+
+            buffer.append(END);
+            if (ids != null)
+                storeRecord(records.edges, edge, ids, label, definition, buffer, recordStart);
+            if (timed)
+                edgeCount.increment();
+        }
+
+        /**
+         * Replaces the ids, which were rendered to buffer from start, by the gml of the last export if the
+         * fingerprint of the element is unchanged
+         *
+         * @return true if the record was copied, false if the element has to be rendered
+         */
+        private boolean copyRecord(Map<Object, RecordCache.Record> records, Object element, GmlBuffer buffer, int start,
+                                   @Nullable String label, @Nullable GraphicDefinition definition) {
+            RecordCache.Record record = records.get(element);
+            if (record == null || !record.matches(buffer.array(), start, buffer.size(), label, definition)) {
+                return false;
+            }
+            record.generation = generation;
+            buffer.truncate(start);
+            buffer.append(record.gml);
+            return true;
+        }
+
+        /**
+         * Removes the ids rendered from start from the buffer
+         *
+         * @return the removed ids
+         */
+        private byte[] takeIds(GmlBuffer buffer, int start) {
+            byte[] ids = Arrays.copyOfRange(buffer.array(), start, buffer.size());
+            buffer.truncate(start);
+            return ids;
+        }
+
+        private void storeRecord(Map<Object, RecordCache.Record> records, Object element, byte[] ids, @Nullable String label,
+                                 @Nullable GraphicDefinition definition, GmlBuffer buffer, int start) {
+            byte[] gml = Arrays.copyOfRange(buffer.array(), start, buffer.size());
+            records.put(element, new RecordCache.Record(ids, label, definition, gml, generation));
+        }
+
+        /**
+         * Writes the node of a shard in the overview of a sharded export
+         */
+        private void overviewNode(Object shard, String label, NodeGraphicDefinition definition) throws IOException {
+            buffer.append(NODE_START);
+            buffer.append(ID);
+            appendUniqueId(buffer, shard);
+            buffer.append(NEWLINE);
+            appendLabel(buffer, label);
+            appendGraphics(buffer, definition, true);
+            buffer.append(END);
+            flushIfFull();
+        }
+
+        /**
+         * Writes the edges between two shards in the overview of a sharded export
+         */
+        private void overviewEdge(Object link, Object source, Object target, String label,
+                                  EdgeGraphicDefinition definition) throws IOException {
+            buffer.append(EDGE_START);
+            buffer.append(ID);
+            appendUniqueId(buffer, link);
+            buffer.append(NEWLINE);
+            buffer.append(SOURCE);
+            appendUniqueId(buffer, source);
+            buffer.append(NEWLINE);
+            buffer.append(TARGET);
+            appendUniqueId(buffer, target);
+            buffer.append(NEWLINE);
+            appendLabel(buffer, label);
+            appendGraphics(buffer, definition, true);
+            buffer.append(END);
+            flushIfFull();
+        }
+
+        private void appendUniqueId(GmlBuffer buffer, Object element) {
+            if (uniqueIntIds != null) {
+                buffer.appendInt(uniqueIntIds.applyAsInt(element));
+            } else {
+                buffer.appendUtf8(uniqueIds.apply(element));
+            }
+        }
+
+        private void appendLabel(GmlBuffer buffer, String label) {
+            buffer.append(LABEL);
+            if (labelCache != null) {
+                labelCache.appendQuoted(buffer, label);
+            } else {
+                buffer.appendQuoted(label);
+            }
+            buffer.append(NEWLINE);
+        }
+
+        /**
+         * Interned definitions are shared, so their gml is rendered once and cached. Without interning
+         * definitions are mostly used once and are rendered straight into the buffer.
+         */
+        private void appendGraphics(GmlBuffer buffer, @Nullable GraphicDefinition definition, boolean printLabel) {
+            if (definition == null)
+                return;
+            if (registry != null) {
+                buffer.append(registry.intern(definition).toBytes(printLabel));
+            } else {
+                definition.appendTo(buffer, printLabel);
+            }
+        }
+
+        /**
+         * @return the definition to render at a computed position. Interned definitions get their gml cached, as
+         * only the position differs between the nodes sharing them.
+         */
+        private NodeGraphicDefinition positionedGraphics(@Nullable NodeGraphicDefinition definition, boolean printLabel) {
+            NodeGraphicDefinition positioned = definition != null ? definition : LAID_OUT_GRAPHICS;
+            if (registry != null) {
+                positioned = registry.intern(positioned);
+                positioned.toBytes(printLabel);
+            }
+            return positioned;
+        }
+
+        private void checkOpen() {
+            if (closed)
+                throw new IllegalStateException("export session is closed");
+        }
+
+        private void flushIfFull() throws IOException {
+            if (buffer.size() >= FLUSH_THRESHOLD) {
+                write(buffer);
+            }
+        }
+
+        /**
+         * Passes the content of a buffer to the output and clears it
+         */
+        private void write(GmlBuffer records) throws IOException {
+            records.writeTo(out);
+            bytesWritten += records.size();
+            records.clear();
+        }
+
+        /**
+         * Renders all elements in iteration order, either sequentially or in chunks on the fork join pool
+         */
+        private <T> void exportAll(Iterable<T> elements, BiConsumer<GmlBuffer, T> renderer) throws IOException {
+            exportAll(elements, 1, renderer);
+        }
+
+        /**
+         * @param itemSize amount of elements per item, e.g. of a batch, a parallel task renders chunkSize elements
+         */
+        private <T> void exportAll(Iterable<T> elements, int itemSize, BiConsumer<GmlBuffer, T> renderer) throws IOException {
+            if (!parallel) {
+                for (T element : elements) {
+                    renderer.accept(buffer, element);
+                    flushIfFull();
+                }
+                return;
+            }
+
+            // keep the order of the output: everything rendered so far goes first
+            write(buffer);
+
+            // chunks are rendered in parallel but written in submission order. The amount of chunks in flight is
+            // bounded, so memory does not grow with the graph size
+            int maxPending = pool.getParallelism() * 4;
+            ArrayDeque<ForkJoinTask<GmlBuffer>> pending = new ArrayDeque<>(maxPending);
+            Queue<GmlBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+            try {
+                int itemsPerChunk = Math.max(1, chunkSize / itemSize);
+                Iterator<T> iterator = elements.iterator();
+                while (iterator.hasNext()) {
+                    List<T> chunk = new ArrayList<>(itemsPerChunk);
+                    while (chunk.size() < itemsPerChunk && iterator.hasNext()) {
+                        chunk.add(iterator.next());
+                    }
+                    pending.add(pool.submit(() -> {
+                        GmlBuffer chunkBuffer = freeBuffers.poll();
+                        if (chunkBuffer == null) {
+                            chunkBuffer = new GmlBuffer();
+                        }
+                        for (T element : chunk) {
+                            renderer.accept(chunkBuffer, element);
+                        }
+                        return chunkBuffer;
+                    }));
+                    if (pending.size() >= maxPending) {
+                        writeChunk(pending.poll().join(), freeBuffers);
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    writeChunk(pending.poll().join(), freeBuffers);
+                }
+            } finally {
+                // only non empty on failure
+                for (ForkJoinTask<GmlBuffer> task : pending) {
+                    task.cancel(true);
+                }
+            }
+        }
+
+        private void writeChunk(GmlBuffer chunk, Queue<GmlBuffer> freeBuffers) throws IOException {
+            write(chunk);
+            freeBuffers.offer(chunk);
+        }
+    }
 }
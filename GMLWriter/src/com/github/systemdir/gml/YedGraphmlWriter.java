@@ -0,0 +1,543 @@
+package com.github.systemdir.gml;
+
+import com.github.systemdir.gml.io.GmlBuffer;
+import com.github.systemdir.gml.io.ParallelGzipOutputStream;
+import com.github.systemdir.gml.io.WriterOutputStream;
+import com.github.systemdir.gml.io.XmlWriter;
+import com.github.systemdir.gml.model.ConcurrentUniqueIntIdFunction;
+import com.github.systemdir.gml.model.EdgeGraphicDefinition;
+import com.github.systemdir.gml.model.GraphicDefinitionRegistry;
+import com.github.systemdir.gml.model.NodeGraphicDefinition;
+import com.github.systemdir.gml.model.UniqueIntIdFunction;
+import com.github.systemdir.gml.model.YedGmlGraphicsProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.Graph;
+import org.jgrapht.UndirectedGraph;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.zip.GZIPOutputStream;
+
+import static com.github.systemdir.gml.YedGmlWriter.PrintLabels.*;
+import static com.github.systemdir.gml.io.GmlBuffer.ascii;
+
+/**
+ * Exports a graph into a GraphML file with the yEd extensions, the native file format of yEd.
+ * <p>
+ * The writer is configured by the same {@link YedGmlWriter.Builder} as the GML writer, see
+ * {@link YedGmlWriter.Builder#buildGraphml()}: graphics, label and id providers, groups, filters and compression
+ * apply to both formats, so one graph can be exported in either format with the same look. Groups become group
+ * nodes containing the graph of their vertices, nested groups are nested into the graph of their parent. The
+ * parallel, incremental, label cache, async output, layout and listener settings are GML specific and ignored.
+ * <p>
+ * The output is rendered straight into a reused byte buffer. The realizers (the styles) of interned graphic
+ * definitions are rendered once per export and then copied, only ids and label texts are rendered per element.
+ * <p>
+ * Like the GML writer, a GraphML writer only holds configuration and may run any amount of exports concurrently.
+ */
+public class YedGraphmlWriter<V, E, G> {
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    private static final byte[] GRAPHML_START = ascii("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+            + " xmlns:y=\"http://www.yworks.com/xml/graphml\""
+            + " xsi:schemaLocation=\"http://graphml.graphdrawing.org/xmlns"
+            + " http://www.yworks.com/xml/schema/graphml/1.1/ygraphml.xsd\">\n"
+            + "<key for=\"node\" id=\"d0\" yfiles.type=\"nodegraphics\"/>\n"
+            + "<key for=\"edge\" id=\"d1\" yfiles.type=\"edgegraphics\"/>\n");
+    private static final byte[] GRAPHML_END = ascii("</graphml>\n");
+    private static final byte[] GRAPH = ascii("graph");
+    private static final byte[] NODE = ascii("node");
+    private static final byte[] EDGE = ascii("edge");
+    private static final byte[] DATA = ascii("data");
+    private static final byte[] ID = ascii("id");
+    private static final byte[] KEY = ascii("key");
+    private static final byte[] SOURCE = ascii("source");
+    private static final byte[] TARGET = ascii("target");
+    private static final byte[] EDGE_DEFAULT = ascii("edgedefault");
+    private static final byte[] FOLDER_TYPE = ascii("yfiles.foldertype");
+    private static final byte[] DIRECTED = ascii("directed");
+    private static final byte[] UNDIRECTED = ascii("undirected");
+    private static final byte[] GROUP = ascii("group");
+    private static final byte[] ROOT_GRAPH_ID = ascii("G");
+    private static final byte[] NODE_GRAPHICS_KEY = ascii("d0");
+    private static final byte[] EDGE_GRAPHICS_KEY = ascii("d1");
+    // suffix of the id of the graph nested in a group node, as yEd writes it
+    private static final String NESTED_GRAPH_SUFFIX = ":";
+
+    @Nullable
+    private final GroupHierarchy<V, G> groups;
+    // set instead of groups if the groups are discovered per export
+    @Nullable
+    private final Function<V, G> groupClassifier;
+    @Nullable
+    private final Function<G, G> groupParentProvider;
+    @Nullable
+    private final Function<Object, String> vertexIDProvider;
+    @NotNull
+    private final Function<V, String> vertexLabelProvider;
+    @Nullable
+    private final Function<? super E, String> edgeIDProvider;
+    @NotNull
+    private final Function<E, String> edgeLabelProvider;
+    @NotNull
+    private final YedGmlGraphicsProvider<V, E, G> graphProvider;
+    @NotNull
+    private final Function<G, String> groupLabelProvider;
+    private final boolean identityIds;
+    @Nullable
+    private final ConcurrentUniqueIntIdFunction<Object> sharedIdFunction;
+    private final boolean printVertexLabels;
+    private final boolean printEdgeLabels;
+    private final boolean printGroupLabels;
+    private final boolean internGraphics;
+    @Nullable
+    private final Predicate<? super V> vertexFilter;
+    @Nullable
+    private final Predicate<? super E> edgeFilter;
+    private final boolean gzip;
+    @Nullable
+    private final ExecutorService compressionExecutor;
+    private final int compressionThreads;
+    private final int compressionBlockSize;
+
+    public YedGraphmlWriter(YedGmlWriter.Builder<V, E, G> builder) {
+        EnumSet<YedGmlWriter.PrintLabels> printLabels = EnumSet.copyOf(builder.printLabels);
+        this.graphProvider = builder.graphicsProvider;
+        this.printVertexLabels = printLabels.contains(PRINT_VERTEX_LABELS);
+        this.printEdgeLabels = printLabels.contains(PRINT_EDGE_LABELS);
+        this.printGroupLabels = printLabels.contains(PRINT_GROUP_LABELS);
+        this.internGraphics = builder.internGraphics;
+        this.vertexFilter = builder.vertexFilter;
+        this.edgeFilter = builder.edgeFilter;
+        this.gzip = builder.gzip;
+        this.compressionExecutor = builder.compressionExecutor;
+        this.compressionThreads = builder.compressionThreads;
+        this.compressionBlockSize = builder.compressionBlockSize;
+
+        this.vertexLabelProvider = builder.vertexLabelProvider != null
+                ? builder.vertexLabelProvider
+                : Objects::toString;
+        this.edgeLabelProvider = builder.edgeLabelProvider != null
+                ? builder.edgeLabelProvider
+                : Objects::toString;
+        this.vertexIDProvider = builder.vertexIDProvider;
+        this.edgeIDProvider = builder.edgeIDProvider;
+        this.identityIds = builder.identityIds;
+        this.sharedIdFunction = builder.shareIds ? new ConcurrentUniqueIntIdFunction<>(identityIds) : null;
+
+        this.groups = builder.groupMapping != null
+                ? new GroupHierarchy<>(builder.groupMapping, builder.groupParentProvider)
+                : null;
+        this.groupClassifier = builder.groupClassifier;
+        this.groupParentProvider = builder.groupParentProvider;
+        if (groups != null || groupClassifier != null) {
+            this.groupLabelProvider = builder.groupLabelProvider != null
+                    ? builder.groupLabelProvider
+                    : Objects::toString;
+        } else {
+            groupLabelProvider = Objects::toString;
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static <T> ToIntFunction<T> intIdProvider(Function<T, String> idProvider) {
+        return idProvider instanceof ToIntFunction ? (ToIntFunction<T>) idProvider : null;
+    }
+
+    /**
+     * Exports an undirected graph into a PLAIN text file in GraphML format.
+     *
+     * @param output the writer to which the graph to be exported
+     * @param g the undirected graph to be exported
+     * @throws UncheckedIOException if writing to output fails
+     */
+    public void export(Writer output, UndirectedGraph<V, E> g) {
+        exportToWriter(output, g, false);
+    }
+
+    /**
+     * Exports a directed graph into a PLAIN text file in GraphML format.
+     *
+     * @param output the writer to which the graph to be exported
+     * @param g the directed graph to be exported
+     * @throws UncheckedIOException if writing to output fails
+     */
+    public void export(Writer output, DirectedGraph<V, E> g) {
+        exportToWriter(output, g, true);
+    }
+
+    /**
+     * Exports an undirected graph as UTF-8 encoded GraphML. The stream is flushed but not closed. The output is
+     * compressed if configured, see {@link YedGmlWriter.Builder#setGzipCompression(boolean)}.
+     *
+     * @param output the stream to which the graph to be exported
+     * @param g the undirected graph to be exported
+     * @throws IOException if writing to output fails
+     */
+    public void export(OutputStream output, UndirectedGraph<V, E> g) throws IOException {
+        export(output, g, false, true);
+    }
+
+    /**
+     * Exports a directed graph as UTF-8 encoded GraphML. The stream is flushed but not closed. The output is
+     * compressed if configured, see {@link YedGmlWriter.Builder#setGzipCompression(boolean)}.
+     *
+     * @param output the stream to which the graph to be exported
+     * @param g the directed graph to be exported
+     * @throws IOException if writing to output fails
+     */
+    public void export(OutputStream output, DirectedGraph<V, E> g) throws IOException {
+        export(output, g, true, true);
+    }
+
+    /**
+     * Exports an undirected graph as UTF-8 encoded GraphML to a file. An existing file is replaced, the file is deleted
+     * if the export fails.
+     *
+     * @param output the file to which the graph to be exported
+     * @param g the undirected graph to be exported
+     * @throws IOException if writing the file fails
+     */
+    public void export(Path output, UndirectedGraph<V, E> g) throws IOException {
+        try (OutputStream out = Files.newOutputStream(output)) {
+            export(out, g, false, true);
+        } catch (IOException | RuntimeException | Error e) {
+            YedGmlWriter.deleteFailed(output, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Exports a directed graph as UTF-8 encoded GraphML to a file. An existing file is replaced, the file is deleted
+     * if the export fails.
+     *
+     * @param output the file to which the graph to be exported
+     * @param g the directed graph to be exported
+     * @throws IOException if writing the file fails
+     */
+    public void export(Path output, DirectedGraph<V, E> g) throws IOException {
+        try (OutputStream out = Files.newOutputStream(output)) {
+            export(out, g, true, true);
+        } catch (IOException | RuntimeException | Error e) {
+            YedGmlWriter.deleteFailed(output, e);
+            throw e;
+        }
+    }
+
+    private void exportToWriter(Writer output, Graph<V, E> g, boolean directed) {
+        try {
+            export(new WriterOutputStream(output), g, directed, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void export(OutputStream target, Graph<V, E> g, boolean directed, boolean compress) throws IOException {
+        OutputStream out = compress ? compressed(target) : target;
+        try {
+            new Export(out, g, directed).run();
+            if (out instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) out).finish();
+            } else if (out instanceof ParallelGzipOutputStream) {
+                ((ParallelGzipOutputStream) out).finish();
+            }
+            out.flush();
+        } catch (IOException | RuntimeException | Error e) {
+            if (out instanceof ParallelGzipOutputStream) {
+                ((ParallelGzipOutputStream) out).cancel();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps target according to the compression settings, like the GML writer
+     */
+    private OutputStream compressed(OutputStream target) throws IOException {
+        if (compressionExecutor != null) {
+            return new ParallelGzipOutputStream(target, compressionExecutor, compressionThreads, compressionBlockSize);
+        }
+        if (gzip) {
+            return new GZIPOutputStream(target, FLUSH_THRESHOLD);
+        }
+        return target;
+    }
+
+    /**
+     * State of one export
+     */
+    private final class Export {
+        @NotNull
+        private final OutputStream out;
+        @NotNull
+        private final Graph<V, E> g;
+        private final boolean directed;
+        @NotNull
+        private final GmlBuffer buffer = new GmlBuffer(FLUSH_THRESHOLD + FLUSH_THRESHOLD / 4);
+        @NotNull
+        private final XmlWriter xml = new XmlWriter(buffer);
+
+        // realizers of the interned definitions, null without interning as definitions are then mostly used once
+        @Nullable
+        private final GraphicDefinitionRegistry registry = internGraphics ? new GraphicDefinitionRegistry() : null;
+        @Nullable
+        private final Map<NodeGraphicDefinition, GraphmlStyles.Fragment> vertexStyles = internGraphics ? new IdentityHashMap<>() : null;
+        @Nullable
+        private final Map<NodeGraphicDefinition, GraphmlStyles.Fragment> groupStyles = internGraphics ? new IdentityHashMap<>() : null;
+        @Nullable
+        private final Map<EdgeGraphicDefinition, GraphmlStyles.Fragment> edgeStyles = internGraphics ? new IdentityHashMap<>() : null;
+
+        @NotNull
+        private final Function<Object, String> vertexIds;
+        @NotNull
+        private final Function<? super E, String> edgeIds;
+        @NotNull
+        private final Function<? super G, String> groupIds;
+        @Nullable
+        private final ToIntFunction<Object> vertexIntIds;
+        @Nullable
+        private final ToIntFunction<? super E> edgeIntIds;
+        @Nullable
+        private final ToIntFunction<? super G> groupIntIds;
+
+        // the groups of the export, classified ones are all discovered before writing as group nodes come first
+        @Nullable
+        private final GroupHierarchy<V, G> hierarchy;
+        // groups without any member accepted by the vertex filter, null if there is no vertex filter
+        @Nullable
+        private final Set<Object> emptyGroups;
+
+        private Export(@NotNull OutputStream out, @NotNull Graph<V, E> g, boolean directed) {
+            this.out = out;
+            this.g = g;
+            this.directed = directed;
+            // same id functions as the GML writer, so vertices get the same ids in both formats
+            Function<Object, String> uniqueIdFunction = sharedIdFunction != null
+                    ? sharedIdFunction
+                    : new UniqueIntIdFunction<>(identityIds);
+            this.vertexIds = vertexIDProvider != null ? vertexIDProvider : uniqueIdFunction;
+            this.edgeIds = edgeIDProvider != null ? edgeIDProvider : uniqueIdFunction;
+            this.groupIds = uniqueIdFunction;
+            this.vertexIntIds = intIdProvider(vertexIds);
+            this.edgeIntIds = intIdProvider(edgeIds);
+            this.groupIntIds = intIdProvider(groupIds);
+            if (groupClassifier != null) {
+                this.hierarchy = GroupHierarchy.classified(g.vertexSet(), groupClassifier, groupParentProvider);
+                hierarchy.classifyAll(vertexFilter);
+                // only groups of exported vertices are discovered
+                this.emptyGroups = null;
+            } else {
+                this.hierarchy = groups;
+                this.emptyGroups = vertexFilter != null && groups != null ? groups.emptyGroups(vertexFilter) : null;
+            }
+        }
+
+        private void run() throws IOException {
+            // vertices come first in the id order, as in a GML export, although grouped vertices are written later
+            for (V vertex : g.vertexSet()) {
+                if (vertexIntIds != null) {
+                    vertexIntIds.applyAsInt(vertex);
+                } else {
+                    vertexIds.apply(vertex);
+                }
+            }
+
+            xml.declaration();
+            buffer.append(GRAPHML_START);
+            xml.start(GRAPH).attribute(EDGE_DEFAULT, directed ? DIRECTED : UNDIRECTED).attribute(ID, ROOT_GRAPH_ID);
+
+            // grouped vertices are written into the graph of their group node
+            for (V vertex : g.vertexSet()) {
+                if (hierarchy != null && (hierarchy.isGroup(vertex) || hierarchy.groupOf(vertex) >= 0)) {
+                    continue;
+                }
+                exportVertex(vertex);
+            }
+            if (hierarchy != null) {
+                for (int i = 0; i < hierarchy.size(); i++) {
+                    if (hierarchy.parent(i) < 0) {
+                        exportGroup(i);
+                    }
+                }
+            }
+            for (E edge : g.edgeSet()) {
+                exportEdge(edge, g.getEdgeSource(edge), g.getEdgeTarget(edge));
+            }
+
+            xml.end();
+            buffer.append(GRAPHML_END);
+            write();
+        }
+
+        private void exportVertex(V vertex) throws IOException {
+            if (vertexFilter != null && !vertexFilter.test(vertex)) {
+                return;
+            }
+            String label = printVertexLabels ? vertexLabelProvider.apply(vertex) : null;
+            NodeGraphicDefinition definition = graphProvider.getVertexGraphics(vertex);
+
+            xml.start(NODE);
+            vertexIdAttribute(ID, vertex);
+            if (definition != null) {
+                xml.start(DATA).attribute(KEY, NODE_GRAPHICS_KEY);
+                appendNodeStyle(vertexStyles, definition, false, printVertexLabels, label);
+                xml.end();
+            }
+            xml.end();
+            flushIfFull();
+        }
+
+        /**
+         * Writes the group node with its vertices and nested groups
+         */
+        private void exportGroup(int index) throws IOException {
+            G group = hierarchy.group(index);
+            if (emptyGroups != null && emptyGroups.contains(group)) {
+                return;
+            }
+            Set<V> groupElements = hierarchy.members(index);
+            String label = printGroupLabels ? groupLabelProvider.apply(group) : null;
+            NodeGraphicDefinition definition = graphProvider.getGroupGraphics(group, groupElements);
+
+            xml.start(NODE);
+            groupIdAttribute(ID, group);
+            xml.attribute(FOLDER_TYPE, GROUP);
+            if (definition != null) {
+                xml.start(DATA).attribute(KEY, NODE_GRAPHICS_KEY);
+                appendNodeStyle(groupStyles, definition, true, printGroupLabels, label);
+                xml.end();
+            }
+
+            xml.start(GRAPH).attribute(EDGE_DEFAULT, directed ? DIRECTED : UNDIRECTED);
+            if (groupIntIds != null) {
+                xml.attribute(ID, groupIntIds.applyAsInt(group) + NESTED_GRAPH_SUFFIX);
+            } else {
+                xml.attribute(ID, groupIds.apply(group) + NESTED_GRAPH_SUFFIX);
+            }
+            for (V member : groupElements) {
+                // like the GML writer, groups of the mapping which are vertices as well are not written as members.
+                // A vertex in several groups belongs to the last one, as its gid in GML
+                if (g.containsVertex(member) && !hierarchy.isGroup(member) && hierarchy.groupOf(member) == index) {
+                    exportVertex(member);
+                }
+            }
+            for (int child = hierarchy.firstChild(index); child >= 0; child = hierarchy.nextSibling(child)) {
+                exportGroup(child);
+            }
+            xml.end();
+            xml.end();
+            flushIfFull();
+        }
+
+        private void exportEdge(E edge, V source, V target) throws IOException {
+            if ((edgeFilter != null && !edgeFilter.test(edge)) || !isExported(source) || !isExported(target)) {
+                return;
+            }
+            String label = printEdgeLabels ? edgeLabelProvider.apply(edge) : null;
+            EdgeGraphicDefinition definition = graphProvider.getEdgeGraphics(edge, source, target);
+
+            xml.start(EDGE);
+            if (edgeIntIds != null) {
+                xml.attribute(ID, edgeIntIds.applyAsInt(edge));
+            } else {
+                xml.attribute(ID, edgeIds.apply(edge));
+            }
+            vertexIdAttribute(SOURCE, source);
+            vertexIdAttribute(TARGET, target);
+            if (definition != null) {
+                xml.start(DATA).attribute(KEY, EDGE_GRAPHICS_KEY);
+                if (edgeStyles != null) {
+                    EdgeGraphicDefinition interned = registry.intern(definition);
+                    GraphmlStyles.Fragment style = edgeStyles.get(interned);
+                    if (style == null) {
+                        style = GraphmlStyles.edgeFragment(interned, printEdgeLabels);
+                        edgeStyles.put(interned, style);
+                    }
+                    style.appendTo(xml, label);
+                } else {
+                    GraphmlStyles.appendEdge(xml, definition, label);
+                }
+                xml.end();
+            }
+            xml.end();
+            flushIfFull();
+        }
+
+        /**
+         * Copies the cached realizer of an interned definition, or renders the realizer straight into the buffer
+         * without interning
+         */
+        private void appendNodeStyle(@Nullable Map<NodeGraphicDefinition, GraphmlStyles.Fragment> styles,
+                                     NodeGraphicDefinition definition, boolean group, boolean printLabel,
+                                     @Nullable String label) {
+            if (styles == null) {
+                GraphmlStyles.appendNode(xml, definition, group, label);
+                return;
+            }
+            NodeGraphicDefinition interned = registry.intern(definition);
+            GraphmlStyles.Fragment style = styles.get(interned);
+            if (style == null) {
+                style = GraphmlStyles.nodeFragment(interned, group, printLabel);
+                styles.put(interned, style);
+            }
+            style.appendTo(xml, label);
+        }
+
+        /**
+         * @return true if the vertex is written, vertices which are groups are written as long as the group is
+         */
+        private boolean isExported(V vertex) {
+            if (vertexFilter == null) {
+                return true;
+            }
+            if (emptyGroups != null && hierarchy.isGroup(vertex)) {
+                return !emptyGroups.contains(vertex);
+            }
+            return vertexFilter.test(vertex);
+        }
+
+        private void vertexIdAttribute(byte[] name, V vertex) {
+            if (vertexIntIds != null) {
+                xml.attribute(name, vertexIntIds.applyAsInt(vertex));
+            } else {
+                xml.attribute(name, vertexIds.apply(vertex));
+            }
+        }
+
+        private void groupIdAttribute(byte[] name, G group) {
+            if (groupIntIds != null) {
+                xml.attribute(name, groupIntIds.applyAsInt(group));
+            } else {
+                xml.attribute(name, groupIds.apply(group));
+            }
+        }
+
+        private void flushIfFull() throws IOException {
+            if (buffer.size() >= FLUSH_THRESHOLD) {
+                write();
+            }
+        }
+
+        private void write() throws IOException {
+            buffer.writeTo(out);
+            buffer.clear();
+        }
+    }
+}
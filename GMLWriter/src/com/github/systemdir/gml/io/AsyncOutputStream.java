@@ -0,0 +1,283 @@
+package com.github.systemdir.gml.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Writes to the underlying stream on another thread, so the writing thread can continue while a write blocks.
+ * <p>
+ * Data is copied into a ring of reusable buffers. Full buffers are written in order by a drain task on the executor
+ * which runs while there are full buffers and ends when there are none, so no thread is occupied while the writer
+ * is rendering. If all buffers are full, the writing thread waits: memory is bounded by buffers * bufferSize.
+ * <p>
+ * A failure of the underlying stream, including an {@link Error}, is rethrown to the writing thread by the next
+ * write, {@link #flush()} or {@link #close()}; the buffers written after the failure are discarded. {@link #flush()}
+ * waits until all data is written, so the underlying stream is only used by the caller again once it returns.
+ * <p>
+ * This class is NOT thread safe, it is written by one thread at a time.
+ */
+public class AsyncOutputStream extends OutputStream {
+    @NotNull
+    private final OutputStream out;
+    @NotNull
+    private final Executor executor;
+    private final int maxBuffers;
+    private final int bufferSize;
+
+    // guards the fields below
+    private final Object lock = new Object();
+    private final ArrayDeque<Buffer> free = new ArrayDeque<>();
+    private final ArrayDeque<Buffer> filled = new ArrayDeque<>();
+    private int allocated;
+    // buffers handed to the drain task and not returned yet
+    private int pending;
+    private boolean draining;
+    private Throwable failure;
+    private boolean cancelled;
+
+    // only used by the writing thread
+    private Buffer current;
+    private boolean closed;
+
+    private static final class Buffer {
+        final byte[] data;
+        int length;
+
+        Buffer(int size) {
+            this.data = new byte[size];
+        }
+    }
+
+    /**
+     * @param out the stream written on the executor
+     * @param executor runs the drain task, e.g. a virtual thread per task executor
+     * @param buffers amount of buffers of the ring, at least 2
+     * @param bufferSize size of a buffer, the amount of data written to out at once
+     */
+    public AsyncOutputStream(@NotNull OutputStream out, @NotNull Executor executor, int buffers, int bufferSize) {
+        if (buffers < 2) {
+            throw new IllegalArgumentException("buffers must be at least 2: " + buffers);
+        }
+        if (bufferSize < 1024) {
+            throw new IllegalArgumentException("bufferSize must be at least 1024: " + bufferSize);
+        }
+        this.out = out;
+        this.executor = executor;
+        this.maxBuffers = buffers;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        while (len > 0) {
+            if (current == null) {
+                current = takeFreeBuffer();
+            }
+            int n = Math.min(len, bufferSize - current.length);
+            System.arraycopy(b, off, current.data, current.length, n);
+            current.length += n;
+            off += n;
+            len -= n;
+            if (current.length == bufferSize) {
+                submitCurrent();
+            }
+        }
+    }
+
+    /**
+     * Hands the buffered data to the drain task, waits until all of it is written and flushes the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        if (current != null && current.length > 0) {
+            submitCurrent();
+        }
+        awaitDrained();
+        checkFailure();
+        out.flush();
+    }
+
+    /**
+     * Discards the data which is not written yet and waits for a running write to end, used when the written data
+     * is abandoned. The underlying stream is not closed.
+     */
+    public void cancel() {
+        closed = true;
+        boolean interrupted = false;
+        synchronized (lock) {
+            cancelled = true;
+            discardFilled();
+            // the caller's stream must not be written after cancel returns, so the wait is not interruptible
+            while (pending > 0 || draining) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException | RuntimeException | Error e) {
+            // e.g. interrupted while waiting: a write may still be running, out must not be closed under it
+            cancel();
+            throw e;
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private Buffer takeFreeBuffer() throws IOException {
+        synchronized (lock) {
+            while (free.isEmpty() && allocated == maxBuffers && failure == null) {
+                waitForDrain();
+            }
+            checkFailure();
+            Buffer buffer = free.poll();
+            if (buffer == null) {
+                // buffers are allocated on demand, small exports need only one
+                buffer = new Buffer(bufferSize);
+                allocated++;
+            }
+            return buffer;
+        }
+    }
+
+    private void submitCurrent() throws IOException {
+        Buffer buffer = current;
+        current = null;
+        boolean start;
+        synchronized (lock) {
+            checkFailure();
+            filled.add(buffer);
+            pending++;
+            start = !draining;
+            draining = true;
+        }
+        if (start) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                synchronized (lock) {
+                    draining = false;
+                    failure = e;
+                    discardFilled();
+                    lock.notifyAll();
+                }
+                throw new IOException("drain task rejected", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the full buffers in order until there are none left
+     */
+    private void drain() {
+        while (true) {
+            Buffer buffer;
+            boolean write;
+            synchronized (lock) {
+                buffer = filled.poll();
+                if (buffer == null) {
+                    draining = false;
+                    lock.notifyAll();
+                    return;
+                }
+                write = failure == null && !cancelled;
+            }
+            Throwable writeFailure = null;
+            if (write) {
+                try {
+                    out.write(buffer.data, 0, buffer.length);
+                } catch (Throwable e) {
+                    writeFailure = e;
+                }
+            }
+            synchronized (lock) {
+                if (writeFailure != null && failure == null) {
+                    failure = writeFailure;
+                }
+                buffer.length = 0;
+                free.add(buffer);
+                pending--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void discardFilled() {
+        for (Buffer buffer : filled) {
+            buffer.length = 0;
+            free.add(buffer);
+        }
+        pending -= filled.size();
+        filled.clear();
+    }
+
+    private void awaitDrained() throws InterruptedIOException {
+        synchronized (lock) {
+            while (pending > 0 || draining) {
+                waitForDrain();
+            }
+        }
+    }
+
+    private void waitForDrain() throws InterruptedIOException {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the output");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable cause;
+        synchronized (lock) {
+            cause = failure;
+        }
+        if (cause == null) {
+            return;
+        }
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IOException(cause);
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.systemdir.gml.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes to a blocking {@link WritableByteChannel} without copying, the written arrays are wrapped.
+ * <p>
+ * Closing the stream does not close the channel.
+ */
+public class ChannelOutputStream extends OutputStream {
+    @NotNull
+    private final WritableByteChannel channel;
+
+    public ChannelOutputStream(@NotNull WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.github.systemdir.gml.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer the GML output is rendered into.
+ * <p>
+ * Text is encoded as UTF-8 directly into the buffer, so no intermediate Strings are created per line. The buffer
+ * is meant to be reused: render some records, {@link #writeTo(OutputStream) write} them, {@link #clear()} and
+ * continue.
+ * <p>
+ * This class is NOT thread safe.
+ */
+public final class GmlBuffer {
+    private static final byte[] QUOT = ascii("&quot;");
+    private static final byte[] AMP = ascii("&amp;");
+    private static final byte[] LT = ascii("&lt;");
+    private static final byte[] GT = ascii("&gt;");
+    private static final byte[] ZERO = ascii("0.0");
+    private static final byte[] NEGATIVE_ZERO = ascii("-0.0");
+    private static final byte[] HEX_DIGITS = ascii("0123456789abcdef");
+    private static final int MAX_FAST_DECIMALS = 3;
+    private static final double[] POWERS_OF_TEN = {1, 10, 100, 1000};
+
+    private byte[] bytes;
+    private int size;
+
+    public GmlBuffer() {
+        this(8192);
+    }
+
+    /**
+     * @param initialCapacity initial size of the buffer in bytes, grows when needed
+     */
+    public GmlBuffer(int initialCapacity) {
+        this.bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Encodes a String which is known to contain only ASCII characters, e.g. GML keywords.
+     */
+    @NotNull
+    public static byte[] ascii(@NotNull String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return amount of bytes in the buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empties the buffer, the allocated memory is kept for reuse
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Discards everything after the first newSize bytes
+     */
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IndexOutOfBoundsException("newSize " + newSize + " outside of 0.." + size);
+        }
+        size = newSize;
+    }
+
+    /**
+     * @return the backing array, valid from index 0 to {@link #size()}
+     */
+    @NotNull
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * @return a copy of the buffer content
+     */
+    @NotNull
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    public void writeTo(@NotNull OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    public GmlBuffer append(byte b) {
+        ensureCapacity(1);
+        bytes[size++] = b;
+        return this;
+    }
+
+    public GmlBuffer append(@NotNull byte[] b) {
+        return append(b, 0, b.length);
+    }
+
+    public GmlBuffer append(@NotNull byte[] b, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(b, offset, bytes, size, length);
+        size += length;
+        return this;
+    }
+
+    public GmlBuffer append(@NotNull GmlBuffer other) {
+        return append(other.bytes, 0, other.size);
+    }
+
+    /**
+     * Appends the decimal representation of an int
+     */
+    public GmlBuffer appendInt(int value) {
+        if (value == Integer.MIN_VALUE) {
+            return appendUtf8(Integer.toString(value));
+        }
+        ensureCapacity(11);
+        if (value < 0) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int pos = size + digits;
+        size = pos;
+        do {
+            bytes[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return this;
+    }
+
+    /**
+     * Appends the decimal representation of a long
+     */
+    public GmlBuffer appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return appendUtf8(Long.toString(value));
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int pos = size + digits;
+        size = pos;
+        do {
+            bytes[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return this;
+    }
+
+    /**
+     * Appends a double exactly as {@link Double#toString(double)} formats it.
+     * <p>
+     * Integral values and values with up to {@value #MAX_FAST_DECIMALS} decimals, which is what coordinates, sizes
+     * and insets usually are, are written without creating a String. Other values fall back to Double.toString.
+     */
+    public GmlBuffer appendDouble(double value) {
+        if (value == 0) {
+            // keeps the sign of -0.0
+            return append(1 / value < 0 ? NEGATIVE_ZERO : ZERO);
+        }
+        double abs = Math.abs(value);
+        // Double.toString switches to computerized scientific notation outside of this range
+        if (abs >= 1e-3 && abs < 1e7) {
+            for (int decimals = 0; decimals <= MAX_FAST_DECIMALS; decimals++) {
+                double scaled = abs * POWERS_OF_TEN[decimals];
+                long digits = (long) scaled;
+                // the value must be the double closest to digits / 10^decimals, else Double.toString prints more digits
+                if (digits == scaled && digits / POWERS_OF_TEN[decimals] == abs) {
+                    // a trailing zero means a shorter form exists, leave that case to Double.toString
+                    if (decimals > 0 && digits % 10 == 0) {
+                        break;
+                    }
+                    return appendDecimal(value < 0, digits, decimals);
+                }
+            }
+        }
+        return appendUtf8(Double.toString(value));
+    }
+
+    private GmlBuffer appendDecimal(boolean negative, long digits, int decimals) {
+        if (negative) {
+            append((byte) '-');
+        }
+        long divisor = (long) POWERS_OF_TEN[decimals];
+        appendLong(digits / divisor);
+        append((byte) '.');
+        if (decimals == 0) {
+            return append((byte) '0');
+        }
+        long fraction = digits % divisor;
+        ensureCapacity(decimals);
+        for (int i = decimals - 1; i >= 0; i--) {
+            bytes[size + i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        size += decimals;
+        return this;
+    }
+
+    /**
+     * Appends a value from 0 to 255 as two lower case hex digits
+     */
+    public GmlBuffer appendHexByte(int value) {
+        ensureCapacity(2);
+        bytes[size++] = HEX_DIGITS[(value >> 4) & 0xf];
+        bytes[size++] = HEX_DIGITS[value & 0xf];
+        return this;
+    }
+
+    /**
+     * Appends the UTF-8 encoding of s. Unpaired surrogates are encoded as '?' like {@link String#getBytes} does.
+     */
+    public GmlBuffer appendUtf8(@NotNull CharSequence s) {
+        int length = s.length();
+        ensureCapacity(length);
+        int i = 0;
+        // ASCII fast path
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            bytes[size++] = (byte) c;
+        }
+        for (; i < length; i++) {
+            i = appendUtf8Char(s, i);
+        }
+        return this;
+    }
+
+    /**
+     * Appends s in double quotes. '"' and '&amp;' are escaped as HTML entities as yED expects.
+     */
+    public GmlBuffer appendQuoted(@NotNull CharSequence s) {
+        int length = s.length();
+        ensureCapacity(length + 2);
+        bytes[size++] = '"';
+        int i = 0;
+        // fast path: ASCII without characters to escape, which most labels are, is copied straight through
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80 || c == '"' || c == '&') {
+                break;
+            }
+            bytes[size++] = (byte) c;
+        }
+        for (; i < length; i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '"':
+                    append(QUOT);
+                    break;
+                case '&':
+                    append(AMP);
+                    break;
+                default:
+                    i = appendUtf8Char(s, i);
+            }
+        }
+        return append((byte) '"');
+    }
+
+    /**
+     * Appends s escaped for XML text and double quoted attribute values. Line breaks and tabs are written as
+     * character references, so attribute values keep them. Other control characters are not allowed in XML 1.0
+     * and are written as '?'.
+     */
+    public GmlBuffer appendXmlEscaped(@NotNull CharSequence s) {
+        int length = s.length();
+        ensureCapacity(length);
+        int i = 0;
+        // fast path like appendQuoted
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80 || c < 0x20 || c == '"' || c == '&' || c == '<' || c == '>') {
+                break;
+            }
+            bytes[size++] = (byte) c;
+        }
+        for (; i < length; i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '"':
+                    append(QUOT);
+                    break;
+                case '&':
+                    append(AMP);
+                    break;
+                case '<':
+                    append(LT);
+                    break;
+                case '>':
+                    append(GT);
+                    break;
+                case '\t':
+                case '\n':
+                case '\r':
+                    append((byte) '&').append((byte) '#').appendInt(ch).append((byte) ';');
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        append((byte) '?');
+                    } else {
+                        i = appendUtf8Char(s, i);
+                    }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends the UTF-8 encoding of the character at index i.
+     *
+     * @return index of the last consumed character, differs from i for surrogate pairs
+     */
+    int appendUtf8Char(@NotNull CharSequence s, int i) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) c;
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            bytes[size++] = (byte) (0xc0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(i + 1));
+                ensureCapacity(4);
+                bytes[size++] = (byte) (0xf0 | (cp >> 18));
+                bytes[size++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                bytes[size++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                bytes[size++] = (byte) (0x80 | (cp & 0x3f));
+                return i + 1;
+            }
+            ensureCapacity(1);
+            bytes[size++] = '?';
+        } else {
+            ensureCapacity(3);
+            bytes[size++] = (byte) (0xe0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        }
+        return i;
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = size + additional;
+        if (required > bytes.length) {
+            if (required < 0) {
+                throw new OutOfMemoryError("GmlBuffer larger than 2GB");
+            }
+            int newCapacity = Math.max(required, bytes.length + (bytes.length >> 1));
+            bytes = Arrays.copyOf(bytes, newCapacity < 0 ? Integer.MAX_VALUE - 8 : newCapacity);
+        }
+    }
+}
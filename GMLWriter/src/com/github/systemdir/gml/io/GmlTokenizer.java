@@ -0,0 +1,505 @@
+package com.github.systemdir.gml.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Pull parser splitting a GML file into tokens, reading it window by window into a reused direct buffer.
+ * <p>
+ * Tokens are not copied: {@link #next()} only remembers where the current token is in the window. Keys and
+ * enumeration like values are compared in place with {@link #matches(byte[])}, numbers are parsed in place; only
+ * {@link #stringValue()} creates a String. The window moves along the file, so large files are read with constant
+ * memory. A token must fit into one window.
+ * <p>
+ * The file is not mapped, so once the tokenizer is closed nothing holds on to it and it can be overwritten right
+ * away, also on Windows.
+ * <p>
+ * This class is NOT thread safe.
+ */
+public final class GmlTokenizer implements Closeable {
+    /**
+     * Default size of a window
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 8 * 1024 * 1024;
+
+    public enum Token {
+        /**
+         * A key or an unquoted word value
+         */
+        KEY,
+        INTEGER,
+        REAL,
+        STRING,
+        LIST_START,
+        LIST_END,
+        /**
+         * End of the file
+         */
+        END
+    }
+
+    // decimal fast path of doubleValue: longs up to this have an exact double representation
+    private static final long MAX_EXACT_LONG = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    @NotNull
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+    @NotNull
+    private final ByteBuffer window;
+    // file position of the window start
+    private long windowStart;
+    // amount of bytes read into the window
+    private int limit;
+    // next unread byte in the window
+    private int pos;
+
+    private Token token;
+    // bytes of the current token in the window, strings without the quotes
+    private int start;
+    private int end;
+    // false if the current string contains entities or non ASCII characters
+    private boolean plain;
+    private byte[] scratch = new byte[256];
+
+    public GmlTokenizer(@NotNull Path file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param file the file to read
+     * @param windowSize size of the window the file is read into, limits the length of a single token
+     */
+    public GmlTokenizer(@NotNull Path file, int windowSize) throws IOException {
+        if (windowSize < 4096) {
+            throw new IllegalArgumentException("windowSize must be at least 4096: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.fileSize = channel.size();
+            this.window = ByteBuffer.allocateDirect((int) Math.min(windowSize, fileSize));
+            fill(0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Advances to the next token
+     *
+     * @return the type of the token, {@link Token#END} at the end of the file
+     * @throws IOException if reading fails or the file is not valid GML
+     */
+    @NotNull
+    public Token next() throws IOException {
+        // skip white space and comments
+        while (true) {
+            start = pos;
+            if (!available()) {
+                start = end = pos;
+                return token = Token.END;
+            }
+            byte b = window.get(pos);
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                pos++;
+            } else if (b == '#') {
+                while (available() && window.get(pos) != '\n') {
+                    start = ++pos;
+                }
+            } else {
+                break;
+            }
+        }
+
+        byte b = window.get(pos);
+        if (b == '[') {
+            end = ++pos;
+            return token = Token.LIST_START;
+        }
+        if (b == ']') {
+            end = ++pos;
+            return token = Token.LIST_END;
+        }
+        if (b == '"') {
+            return token = scanString();
+        }
+        if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.') {
+            return token = scanNumber();
+        }
+        if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_') {
+            pos++;
+            while (available() && isWordChar(window.get(pos))) {
+                pos++;
+            }
+            end = pos;
+            return token = Token.KEY;
+        }
+        throw error("unexpected character '" + (char) (b & 0xff) + "'");
+    }
+
+    /**
+     * @return the current token
+     */
+    public Token token() {
+        return token;
+    }
+
+    /**
+     * Skips the value of a key: a scalar needs no skipping, a list is skipped up to its end
+     */
+    public void skipValue() throws IOException {
+        if (token != Token.LIST_START) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            switch (next()) {
+                case LIST_START:
+                    depth++;
+                    break;
+                case LIST_END:
+                    depth--;
+                    break;
+                case END:
+                    throw error("unterminated list");
+                default:
+            }
+        }
+    }
+
+    /**
+     * Compares the text of the current key or string with an ASCII encoded text
+     */
+    public boolean matches(@NotNull byte[] text) {
+        if (end - start != text.length) {
+            return false;
+        }
+        for (int i = 0; i < text.length; i++) {
+            if (window.get(start + i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Like {@link #matches(byte[])}, but ignores the case of ASCII letters
+     */
+    public boolean matchesIgnoreCase(@NotNull byte[] text) {
+        if (end - start != text.length) {
+            return false;
+        }
+        for (int i = 0; i < text.length; i++) {
+            byte b = window.get(start + i);
+            if (b != text[i] && toLowerCase(b) != toLowerCase(text[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the value of an integer token
+     * @throws IOException if the current token is no integer or too large for a long
+     */
+    public long longValue() throws IOException {
+        if (token != Token.INTEGER) {
+            throw error("integer expected");
+        }
+        int i = start;
+        boolean negative = false;
+        byte first = window.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = window.get(i) - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw error("integer too large");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return the value of a real or integer token
+     * @throws IOException if the current token is no number
+     */
+    public double doubleValue() throws IOException {
+        if (token == Token.INTEGER) {
+            return longValue();
+        }
+        if (token != Token.REAL) {
+            throw error("number expected");
+        }
+        // fast path for plain decimals like 12.5: digits and the power of ten are exact, the division rounds correctly
+        int i = start;
+        boolean negative = false;
+        byte first = window.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long digits = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            byte b = window.get(i);
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (b >= '0' && b <= '9' && digits < MAX_EXACT_LONG / 10) {
+                digits = digits * 10 + (b - '0');
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                break;
+            }
+        }
+        if (i == end && decimals >= 0 && decimals < POWERS_OF_TEN.length) {
+            double value = digits / POWERS_OF_TEN[decimals];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(copy(), 0, end - start, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            throw error("invalid number");
+        }
+    }
+
+    /**
+     * @return the text of a string, key or number token. Entities (e.g. &amp;quot;) in strings are decoded.
+     */
+    @NotNull
+    public String stringValue() throws IOException {
+        if (token == Token.LIST_START || token == Token.LIST_END || token == Token.END) {
+            throw error("value expected");
+        }
+        byte[] bytes = copy();
+        int length = end - start;
+        if (token != Token.STRING || plain) {
+            return new String(bytes, 0, length, token == Token.STRING ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+        }
+        return decodeEntities(new String(bytes, 0, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a colour string like "#ff0000" or "#ff000080" in place
+     *
+     * @return the colour as ARGB, as used by {@link java.awt.Color#Color(int, boolean)}
+     * @throws IOException if the current token is no colour
+     */
+    public int colorValue() throws IOException {
+        int length = end - start;
+        if (token != Token.STRING || (length != 7 && length != 9) || window.get(start) != '#') {
+            throw error("colour expected");
+        }
+        int rgb = 0;
+        for (int i = start + 1; i < start + 7; i++) {
+            rgb = (rgb << 4) | hexDigit(window.get(i));
+        }
+        int alpha = length == 9 ? (hexDigit(window.get(start + 7)) << 4) | hexDigit(window.get(start + 8)) : 0xff;
+        return (alpha << 24) | rgb;
+    }
+
+    /**
+     * @return file position of the current token, for error messages
+     */
+    public long position() {
+        return windowStart + start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Token scanString() throws IOException {
+        // the opening quote
+        pos++;
+        plain = true;
+        while (true) {
+            if (!available()) {
+                throw error("unterminated string");
+            }
+            byte b = window.get(pos);
+            if (b == '"') {
+                break;
+            }
+            if (b == '&' || b < 0) {
+                plain = false;
+            }
+            pos++;
+        }
+        // exclude the quotes from the token
+        end = pos++;
+        start++;
+        return Token.STRING;
+    }
+
+    private Token scanNumber() throws IOException {
+        boolean real = false;
+        pos++;
+        while (available()) {
+            byte b = window.get(pos);
+            if (b >= '0' && b <= '9') {
+                pos++;
+            } else if (b == '.' || b == 'e' || b == 'E' || b == '-' || b == '+') {
+                real = true;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        end = pos;
+        byte first = window.get(start);
+        if (end - start == 1 && (first == '-' || first == '+' || first == '.')) {
+            throw error("invalid number");
+        }
+        return real ? Token.REAL : Token.INTEGER;
+    }
+
+    /**
+     * @return true if the byte at pos can be read. Moves the window if pos reached its end, so that the current
+     * token starts at the beginning of the new window.
+     */
+    private boolean available() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        if (windowStart + limit >= fileSize) {
+            return false;
+        }
+        if (start == 0) {
+            throw error("token longer than the window size of " + windowSize + " bytes");
+        }
+        int shift = start;
+        fill(windowStart + shift);
+        pos -= shift;
+        start = 0;
+        return pos < limit;
+    }
+
+    private void fill(long position) throws IOException {
+        windowStart = position;
+        ((Buffer) window).clear();
+        ((Buffer) window).limit((int) Math.min(window.capacity(), fileSize - position));
+        while (window.hasRemaining()) {
+            if (channel.read(window, position + window.position()) < 0) {
+                // the file was truncated meanwhile
+                break;
+            }
+        }
+        limit = window.position();
+    }
+
+    /**
+     * @return the bytes of the current token in a reused array
+     */
+    private byte[] copy() {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = window.get(start + i);
+        }
+        return scratch;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at position " + position());
+    }
+
+    private int hexDigit(byte b) throws IOException {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        byte lower = toLowerCase(b);
+        if (lower >= 'a' && lower <= 'f') {
+            return lower - 'a' + 10;
+        }
+        throw error("invalid hex digit");
+    }
+
+    private static boolean isWordChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Decodes the entities yED and {@link GmlBuffer#appendQuoted(CharSequence)} write. Unknown entities are kept.
+     */
+    private static String decodeEntities(String s) {
+        int amp = s.indexOf('&');
+        if (amp < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        sb.append(s, 0, amp);
+        for (int i = amp; i < s.length(); i++) {
+            char c = s.charAt(i);
+            int semicolon;
+            if (c != '&' || (semicolon = s.indexOf(';', i)) < 0 || semicolon - i > 10) {
+                sb.append(c);
+                continue;
+            }
+            String entity = s.substring(i + 1, semicolon);
+            int decoded = decodeEntity(entity);
+            if (decoded < 0) {
+                sb.append(c);
+                continue;
+            }
+            sb.appendCodePoint(decoded);
+            i = semicolon;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the code point of the entity, -1 if unknown
+     */
+    private static int decodeEntity(String entity) {
+        switch (entity) {
+            case "quot":
+                return '"';
+            case "amp":
+                return '&';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "apos":
+                return '\'';
+            default:
+        }
+        if (!entity.startsWith("#")) {
+            return -1;
+        }
+        try {
+            int codePoint = entity.startsWith("#x") || entity.startsWith("#X")
+                    ? Integer.parseInt(entity.substring(2), 16)
+                    : Integer.parseInt(entity.substring(1));
+            return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
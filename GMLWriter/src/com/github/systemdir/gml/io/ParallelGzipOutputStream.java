@@ -0,0 +1,177 @@
+package com.github.systemdir.gml.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compresses on several threads, similar to pigz.
+ * <p>
+ * The data is cut into blocks which are compressed independently on an executor, each into a complete gzip
+ * member. The members are written in order, which results in a standard multi-member gzip stream readable by
+ * {@link java.util.zip.GZIPInputStream} and gunzip. As compression runs in the background, the writing thread can
+ * continue producing data. The amount of blocks in flight is bounded.
+ * <p>
+ * {@link #finish()} completes the stream without closing the underlying stream. This class is NOT thread safe.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    @NotNull
+    private final OutputStream out;
+    @NotNull
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int maxPending;
+
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block;
+    private int blockFill;
+    private boolean anyMemberWritten;
+    private boolean finished;
+
+    /**
+     * @param out the stream the compressed data is written to
+     * @param executor compresses the blocks
+     * @param threads amount of blocks compressed at the same time, should match the threads of the executor
+     * @param blockSize uncompressed size of a block, larger blocks compress slightly better
+     */
+    public ParallelGzipOutputStream(@NotNull OutputStream out, @NotNull ExecutorService executor, int threads, int blockSize) {
+        if (blockSize < 1024) {
+            throw new IllegalArgumentException("blockSize must be at least 1024: " + blockSize);
+        }
+        this.out = out;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        // twice the threads, so the executor has work while the oldest block is written
+        this.maxPending = Math.max(1, threads) * 2;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+        checkNotFinished();
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockFill);
+            System.arraycopy(b, off, block, blockFill, n);
+            blockFill += n;
+            off += n;
+            len -= n;
+            if (blockFill == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the members which are already compressed and flushes the underlying stream. Does not cut the current
+     * block short, as that would reduce the compression.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeMember(pending.poll());
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses the remaining data and writes all members. The underlying stream is flushed but not closed.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (blockFill > 0 || (!anyMemberWritten && pending.isEmpty())) {
+            // an empty stream still needs one (empty) member to be valid gzip
+            submitBlock();
+        }
+        while (!pending.isEmpty()) {
+            writeMember(pending.poll());
+        }
+        finished = true;
+        out.flush();
+    }
+
+    /**
+     * Cancels the compression of pending blocks, used when the written data is abandoned
+     */
+    public void cancel() {
+        finished = true;
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int length = blockFill;
+        pending.add(executor.submit(() -> compress(data, length)));
+        block = new byte[blockSize];
+        blockFill = 0;
+        if (pending.size() >= maxPending) {
+            writeMember(pending.poll());
+        }
+    }
+
+    private static byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 8));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024)) {
+            gzip.write(data, 0, length);
+        }
+        return compressed.toByteArray();
+    }
+
+    private void writeMember(Future<byte[]> member) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = member.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new InterruptedIOException("interrupted while waiting for compression");
+        } catch (ExecutionException e) {
+            cancel();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+        out.write(compressed);
+        anyMemberWritten = true;
+    }
+
+    private void checkNotFinished() throws IOException {
+        if (finished) {
+            throw new IOException("gzip stream already finished");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.systemdir.gml.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of quoted and encoded labels, for exports where the same labels repeat many times.
+ * <p>
+ * The cache is direct mapped: every label has exactly one slot, picked by its hash code, and a new label simply
+ * replaces the one in its slot. Lookups therefore cost one hash code, which Strings cache, and one equals call.
+ * Labels longer than {@link #MAX_LABEL_LENGTH} characters are not cached, so the memory used stays bounded.
+ * <p>
+ * This class is thread safe. Slots hold immutable entries and are updated without locking; concurrent renderers
+ * may replace each others entries, which only costs a re-encoding.
+ */
+public final class QuotedLabelCache {
+    public static final int MAX_LABEL_LENGTH = 256;
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * @param capacity amount of cached labels, rounded up to a power of two
+     */
+    public QuotedLabelCache(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+        }
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+        this.entries = new Entry[Math.max(1, slots)];
+        this.mask = entries.length - 1;
+    }
+
+    /**
+     * Appends the label like {@link GmlBuffer#appendQuoted(CharSequence)}, reusing the encoding of an earlier call
+     * with an equal label
+     */
+    public void appendQuoted(@NotNull GmlBuffer out, @NotNull String label) {
+        int h = label.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        Entry entry = entries[slot];
+        if (entry != null && entry.label.equals(label)) {
+            out.append(entry.quoted);
+            return;
+        }
+
+        int start = out.size();
+        out.appendQuoted(label);
+        if (label.length() <= MAX_LABEL_LENGTH) {
+            entries[slot] = new Entry(label, Arrays.copyOfRange(out.array(), start, out.size()));
+        }
+    }
+
+    private static final class Entry {
+        final String label;
+        final byte[] quoted;
+
+        Entry(String label, byte[] quoted) {
+            this.label = label;
+            this.quoted = quoted;
+        }
+    }
+}
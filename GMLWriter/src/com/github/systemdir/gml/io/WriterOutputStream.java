@@ -0,0 +1,76 @@
+package com.github.systemdir.gml.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes UTF-8 bytes and passes the characters to a {@link Writer}.
+ * <p>
+ * Used to keep the {@link Writer} based export working on top of the byte based rendering. Byte sequences split
+ * between two writes are handled. Flushing flushes the writer, closing the stream does not close the writer.
+ */
+public class WriterOutputStream extends OutputStream {
+    @NotNull
+    private final Writer writer;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+    // bytes of an incomplete UTF-8 sequence from the last write
+    private final ByteBuffer pending = ByteBuffer.allocate(8);
+
+    public WriterOutputStream(@NotNull Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+        // complete a sequence left over from the last write byte by byte
+        while (pending.position() > 0 && len > 0) {
+            pending.put(b[off++]);
+            len--;
+            ((Buffer) pending).flip();
+            decode(pending);
+            pending.compact();
+        }
+        ByteBuffer in = ByteBuffer.wrap(b, off, len);
+        decode(in);
+        pending.put(in);
+    }
+
+    private void decode(ByteBuffer in) throws IOException {
+        while (true) {
+            CoderResult result = decoder.decode(in, chars, false);
+            drainChars();
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+
+    private void drainChars() throws IOException {
+        ((Buffer) chars).flip();
+        writer.write(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        ((Buffer) chars).clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.systemdir.gml.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Streaming XML writer on a {@link GmlBuffer}.
+ * <p>
+ * Element and attribute names are pre-encoded ASCII (see {@link GmlBuffer#ascii(String)}), values and text are
+ * escaped and UTF-8 encoded straight into the buffer, so writing an element creates no garbage. Every element
+ * starts on a new line, there is no indentation.
+ * <p>
+ * This class is NOT thread safe.
+ */
+public final class XmlWriter {
+    private static final byte[] DECLARATION = GmlBuffer.ascii("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+    private static final byte[] EMPTY_END = GmlBuffer.ascii("/>\n");
+    private static final byte[] CLOSING_START = GmlBuffer.ascii("</");
+
+    @NotNull
+    private final GmlBuffer out;
+    // names of the open elements
+    private byte[][] open = new byte[16][];
+    private int depth;
+    // the start tag of the innermost element is not completed by '>' yet, so attributes can be added
+    private boolean startTagOpen;
+
+    public XmlWriter(@NotNull GmlBuffer out) {
+        this.out = out;
+    }
+
+    /**
+     * @return the buffer written to
+     */
+    @NotNull
+    public GmlBuffer buffer() {
+        return out;
+    }
+
+    /**
+     * @return amount of open elements
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Writes the XML declaration, UTF-8 encoding
+     */
+    public XmlWriter declaration() {
+        out.append(DECLARATION);
+        return this;
+    }
+
+    /**
+     * Opens an element. Attributes may be added until content or another element is written.
+     */
+    public XmlWriter start(@NotNull byte[] name) {
+        completeStartTag(true);
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+        }
+        open[depth++] = name;
+        out.append((byte) '<').append(name);
+        startTagOpen = true;
+        return this;
+    }
+
+    public XmlWriter attribute(@NotNull byte[] name, @NotNull CharSequence value) {
+        startAttribute(name).appendXmlEscaped(value);
+        return endAttribute();
+    }
+
+    /**
+     * Adds an attribute whose value is pre-encoded and needs no escaping
+     */
+    public XmlWriter attribute(@NotNull byte[] name, @NotNull byte[] value) {
+        startAttribute(name).append(value);
+        return endAttribute();
+    }
+
+    public XmlWriter attribute(@NotNull byte[] name, long value) {
+        startAttribute(name).appendLong(value);
+        return endAttribute();
+    }
+
+    public XmlWriter attribute(@NotNull byte[] name, double value) {
+        startAttribute(name).appendDouble(value);
+        return endAttribute();
+    }
+
+    /**
+     * Adds an attribute with '#' followed by the lowest bytes of value as hex digits, e.g. a colour
+     *
+     * @param byteCount amount of bytes of value written, most significant first
+     */
+    public XmlWriter hexAttribute(@NotNull byte[] name, int value, int byteCount) {
+        GmlBuffer buffer = startAttribute(name).append((byte) '#');
+        for (int shift = (byteCount - 1) * 8; shift >= 0; shift -= 8) {
+            buffer.appendHexByte(value >> shift);
+        }
+        return endAttribute();
+    }
+
+    /**
+     * Writes escaped text content into the current element
+     */
+    public XmlWriter text(@NotNull CharSequence text) {
+        completeStartTag(false);
+        out.appendXmlEscaped(text);
+        return this;
+    }
+
+    /**
+     * Writes pre-rendered XML as content of the current element. The caller is responsible for it being well formed.
+     */
+    public XmlWriter raw(@NotNull byte[] xml, int offset, int length) {
+        completeStartTag(true);
+        out.append(xml, offset, length);
+        return this;
+    }
+
+    /**
+     * Closes the innermost open element, as empty element if nothing was written into it
+     */
+    public XmlWriter end() {
+        if (depth == 0) {
+            throw new IllegalStateException("no open element");
+        }
+        byte[] name = open[--depth];
+        open[depth] = null;
+        if (startTagOpen) {
+            out.append(EMPTY_END);
+            startTagOpen = false;
+        } else {
+            out.append(CLOSING_START).append(name).append((byte) '>').append((byte) '\n');
+        }
+        return this;
+    }
+
+    private GmlBuffer startAttribute(byte[] name) {
+        if (!startTagOpen) {
+            throw new IllegalStateException("attributes must be written right after the start of an element");
+        }
+        return out.append((byte) ' ').append(name).append((byte) '=').append((byte) '"');
+    }
+
+    private XmlWriter endAttribute() {
+        out.append((byte) '"');
+        return this;
+    }
+
+    /**
+     * @param lineBreak start the content on a new line, false for text which is part of the element's line
+     */
+    private void completeStartTag(boolean lineBreak) {
+        if (startTagOpen) {
+            out.append((byte) '>');
+            if (lineBreak) {
+                out.append((byte) '\n');
+            }
+            startTagOpen = false;
+        }
+    }
+}
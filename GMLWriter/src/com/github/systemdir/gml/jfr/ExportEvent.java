@@ -0,0 +1,46 @@
+package com.github.systemdir.gml.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("com.github.systemdir.gml.Export")
+@Label("GML Export")
+@Category("GML Writer")
+@Description("A graph export of a YedGmlWriter")
+@StackTrace(false)
+final class ExportEvent extends jdk.jfr.Event {
+    @Label("Directed")
+    boolean directed;
+
+    @Label("Vertices")
+    long vertices;
+
+    @Label("Groups")
+    long groups;
+
+    @Label("Edges")
+    long edges;
+
+    @Label("Bytes Written")
+    @Description("GML bytes passed to the output, before compression")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Graphics Provider Time")
+    @Description("Time spent in the graphics provider, summed over all threads")
+    @Timespan
+    long graphicsProviderTime;
+
+    @Label("Label Provider Time")
+    @Description("Time spent in the label functions, summed over all threads")
+    @Timespan
+    long labelProviderTime;
+
+    @Label("Failure")
+    String failure;
+}
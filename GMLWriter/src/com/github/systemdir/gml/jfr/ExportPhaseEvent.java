@@ -0,0 +1,18 @@
+package com.github.systemdir.gml.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.github.systemdir.gml.ExportPhase")
+@Label("GML Export Phase")
+@Category("GML Writer")
+@StackTrace(false)
+final class ExportPhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Elements")
+    long elements;
+}
@@ -0,0 +1,62 @@
+package com.github.systemdir.gml.jfr;
+
+import com.github.systemdir.gml.ExportListener;
+import com.github.systemdir.gml.ExportPhase;
+import com.github.systemdir.gml.ExportStatistics;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Turns the callbacks of one export into {@link ExportEvent} and {@link ExportPhaseEvent}
+ */
+final class JfrExportListener implements ExportListener {
+    private final ExportEvent export = new ExportEvent();
+    @Nullable
+    private ExportPhaseEvent phase;
+
+    @Nullable
+    static ExportListener createIfEnabled() {
+        JfrExportListener listener = new JfrExportListener();
+        // phases are only timed if their events are wanted as well
+        return listener.export.isEnabled() ? listener : null;
+    }
+
+    @Override
+    public void exportStarted(boolean directed) {
+        export.directed = directed;
+        export.begin();
+    }
+
+    @Override
+    public void phaseStarted(ExportPhase phase) {
+        this.phase = new ExportPhaseEvent();
+        this.phase.phase = phase.name();
+        this.phase.begin();
+    }
+
+    @Override
+    public void phaseFinished(ExportPhase phase, long elements, long nanos) {
+        ExportPhaseEvent event = this.phase;
+        this.phase = null;
+        if (event != null) {
+            event.elements = elements;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void exportFinished(ExportStatistics statistics) {
+        export.vertices = statistics.getVertices();
+        export.groups = statistics.getGroups();
+        export.edges = statistics.getEdges();
+        export.bytesWritten = statistics.getBytesWritten();
+        export.graphicsProviderTime = statistics.getGraphicsProviderNanos();
+        export.labelProviderTime = statistics.getLabelProviderNanos();
+        export.commit();
+    }
+
+    @Override
+    public void exportFailed(Throwable failure) {
+        export.failure = failure.toString();
+        export.commit();
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.systemdir.gml.jfr;
+
+import com.github.systemdir.gml.ExportListener;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Supplier;
+
+/**
+ * Entry point to the Flight Recorder events of the writer.
+ * <p>
+ * This class does not reference the jdk.jfr module itself, so it loads on runtimes without Flight Recorder; the
+ * event classes are only touched once the module was found.
+ */
+public final class JfrSupport {
+    @Nullable
+    private static final Supplier<ExportListener> LISTENERS = lookup();
+
+    private JfrSupport() {
+    }
+
+    @Nullable
+    private static Supplier<ExportListener> lookup() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrSupport.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+        return JfrExportListener::createIfEnabled;
+    }
+
+    /**
+     * @return a listener committing the events of one export, or null if Flight Recorder is not available or not
+     * recording the export events
+     */
+    @Nullable
+    public static ExportListener listener() {
+        return LISTENERS != null ? LISTENERS.get() : null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.systemdir.gml.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A graphics provider which looks up the graphics of many elements at once, e.g. with one query to a metrics store
+ * per chunk instead of one per element.
+ * <p>
+ * The writer passes the vertices and edges in chunks of {@code YedGmlWriter.Builder#setGraphicsBatchSize} elements,
+ * in export order and only those which are written. Group graphics, push based exports and the GraphML writer use
+ * the per element methods, which a provider still has to implement. The default batch methods call them, so a
+ * provider can batch vertices or edges only.
+ * <p>
+ * With a parallel export, chunks are looked up concurrently.
+ */
+public interface BatchGraphicsProvider<V, E, G> extends YedGmlGraphicsProvider<V, E, G> {
+
+    /**
+     * @param vertices the vertices of the chunk, must not be modified or kept
+     * @return the graphics of the vertices, in the same order
+     */
+    @NotNull
+    default List<NodeGraphicDefinition> getVertexGraphicsBatch(@NotNull List<V> vertices) {
+        List<NodeGraphicDefinition> graphics = new ArrayList<>(vertices.size());
+        for (V vertex : vertices) {
+            graphics.add(getVertexGraphics(vertex));
+        }
+        return graphics;
+    }
+
+    /**
+     * @param edges the edges of the chunk, must not be modified or kept
+     * @param edgeSources the source of each edge
+     * @param edgeTargets the target of each edge
+     * @return the graphics of the edges, in the same order
+     */
+    @NotNull
+    default List<EdgeGraphicDefinition> getEdgeGraphicsBatch(@NotNull List<E> edges, @NotNull List<V> edgeSources,
+                                                             @NotNull List<V> edgeTargets) {
+        List<EdgeGraphicDefinition> graphics = new ArrayList<>(edges.size());
+        for (int i = 0; i < edges.size(); i++) {
+            graphics.add(getEdgeGraphics(edges.get(i), edgeSources.get(i), edgeTargets.get(i)));
+        }
+        return graphics;
+    }
+}
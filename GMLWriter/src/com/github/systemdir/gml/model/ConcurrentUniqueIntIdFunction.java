@@ -0,0 +1,73 @@
+package com.github.systemdir.gml.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread safe variant of {@link UniqueIntIdFunction}.
+ * <p>
+ * The ids are kept in several independently locked {@link ObjectIntHashMap} stripes and drawn from one atomic
+ * counter, so concurrent exports sharing the function rarely wait for each other. Ids are unique, but their order
+ * depends on the order in which the threads see the objects.
+ */
+public class ConcurrentUniqueIntIdFunction<T> implements Function<T, String>, ToIntFunction<T> {
+    private final ObjectIntHashMap<T>[] stripes;
+    private final boolean identity;
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    public ConcurrentUniqueIntIdFunction() {
+        this(false);
+    }
+
+    /**
+     * @param identity true to tell objects apart by identity instead of equals
+     */
+    public ConcurrentUniqueIntIdFunction(boolean identity) {
+        this(identity, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param identity true to tell objects apart by identity instead of equals
+     * @param concurrency expected amount of threads using the function at the same time
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentUniqueIntIdFunction(boolean identity, int concurrency) {
+        this.identity = identity;
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(concurrency, 1 << 16)) * 2 - 1);
+        stripes = new ObjectIntHashMap[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ObjectIntHashMap<>(identity, 0);
+        }
+    }
+
+    @Override
+    public int applyAsInt(T t) {
+        ObjectIntHashMap<T> stripe = stripes[stripeIndex(t)];
+        synchronized (stripe) {
+            int existing = stripe.get(t);
+            if (existing != 0) {
+                return existing;
+            }
+            int id = nextId.getAndIncrement();
+            stripe.put(t, id);
+            return id;
+        }
+    }
+
+    @Override
+    public String apply(T t) {
+        return String.valueOf(applyAsInt(t));
+    }
+
+    private int stripeIndex(T t) {
+        if (t == null) {
+            return 0;
+        }
+        int h = identity ? System.identityHashCode(t) : t.hashCode();
+        // mixed differently than in the stripe tables, so keys of one stripe still spread in its table
+        h = (h ^ (h >>> 16)) * 0x45d9f3b;
+        h ^= h >>> 16;
+        return h & (stripes.length - 1);
+    }
+}
@@ -1,12 +1,13 @@
 package com.github.systemdir.gml.model;
 
-import com.github.systemdir.gml.YedGmlWriter;
+import com.github.systemdir.gml.io.GmlBuffer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
+import java.util.Objects;
 
-import static com.github.systemdir.gml.model.Tools.getHex;
+import static com.github.systemdir.gml.model.Tools.*;
 
 /**
  * Created by hess on 9/23/2015.
@@ -27,6 +28,14 @@ public class EdgeGraphicDefinition extends GraphicDefinition {
         }
     }
 
+    // pre-encoded gml, see Tools
+    private static final byte[] FILL = quotedKey("fill");
+    private static final byte[] WIDTH = quotedKey("width");
+    private static final byte[] STYLE = quotedKey("style");
+    private static final byte[] SOURCE_ARROW = quotedKey("sourceArrow");
+    private static final byte[] TARGET_ARROW = quotedKey("targetArrow");
+    private static final byte[][] ARROWS = encode(ArrowType.values(), ArrowType::getRepresentedBy);
+
     private ArrowType sourceArrow;
     private ArrowType targetArrow;
     //@Nullable
@@ -36,7 +45,6 @@ public class EdgeGraphicDefinition extends GraphicDefinition {
         @NotNull private ArrowType sourceArrow;
         @NotNull private ArrowType targetArrow;
         //@Nullable private String label;
-        @Nullable Integer lineWidth;
 
         public EdgeGraphicDefinition build(){
             return new EdgeGraphicDefinition(this);
@@ -74,8 +82,8 @@ public class EdgeGraphicDefinition extends GraphicDefinition {
         }
         
         public Builder setLineWidth(@Nullable Integer lineWidth) {
-            this.lineWidth = lineWidth;
-            return this;
+            // sets the width of the base builder, which is the one rendered
+            return super.setLineWidth(lineWidth);
         }
     }
 
@@ -86,51 +94,65 @@ public class EdgeGraphicDefinition extends GraphicDefinition {
         //this.lable = builder.label;
     }
 
+    @NotNull
+    public ArrowType getSourceArrow() {
+        return sourceArrow;
+    }
+
+    @NotNull
+    public ArrowType getTargetArrow() {
+        return targetArrow;
+    }
+
     /**
      * Create GML for the edge
+     * @param out buffer the gml is appended to
      * @param printLabel add label formating informations
-     * @return gml string
      */
-    public String toString(boolean printLabel) {
-        StringBuilder stringBuilder=new StringBuilder();
-        
+    @Override
+    protected void render(GmlBuffer out, boolean printLabel) {
         if(printLabel) {
-            stringBuilder.append(Tools.getLabelGraphics(labelColour,fontSize,fontStyle, labelBackground, null, true));
+            appendLabelGraphics(out, labelColour, fontSize, fontStyle, labelBackground, null, true);
         }
 
-        stringBuilder.append(YedGmlWriter.tab2).append("graphics\n").append(YedGmlWriter.tab2).append("[\n");
+        out.append(GRAPHICS_START);
 
-        stringBuilder.append(YedGmlWriter.tab3).append("fill").append(YedGmlWriter.tab1)
-                .append("\"").append(getHex(lineColor)).append("\"")
-                .append("\n");
+        out.append(FILL);
+        appendHex(out, lineColor).append(QUOTE_END);
 
         if (lineWidth!=null) {
-            stringBuilder.append(YedGmlWriter.tab3).append("width").append(YedGmlWriter.tab1)
-                    .append("\"").append(lineWidth).append("\"")
-                    .append("\n");
+            out.append(WIDTH).appendInt(lineWidth).append(QUOTE_END);
         }
 
         if (lineType != LineType.NORMAL) {
-            stringBuilder.append(YedGmlWriter.tab3).append("style").append(YedGmlWriter.tab1)
-                    .append("\"").append(lineType.name()).append("\"")
-                    .append("\n");
+            out.append(STYLE).append(LINE_TYPES[lineType.ordinal()]).append(QUOTE_END);
         }
 
         if (sourceArrow != ArrowType.NONE) {
-            stringBuilder.append(YedGmlWriter.tab3).append("sourceArrow").append(YedGmlWriter.tab1)
-                    .append("\"").append(sourceArrow.getRepresentedBy()).append("\"")
-                    .append("\n");
+            out.append(SOURCE_ARROW).append(ARROWS[sourceArrow.ordinal()]).append(QUOTE_END);
         }
 
         if (targetArrow != ArrowType.NONE) {
-            stringBuilder.append(YedGmlWriter.tab3).append("targetArrow").append(YedGmlWriter.tab1)
-                    .append("\"").append(targetArrow.getRepresentedBy()).append("\"")
-                    .append("\n");
+            out.append(TARGET_ARROW).append(ARROWS[targetArrow.ordinal()]).append(QUOTE_END);
         }
 
-        stringBuilder.append(YedGmlWriter.tab2).append("]\n");
-        return stringBuilder.toString();
+        out.append(BLOCK_END);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) return false;
+        EdgeGraphicDefinition that = (EdgeGraphicDefinition) o;
+        return sourceArrow == that.sourceArrow && targetArrow == that.targetArrow;
+    }
 
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    @Override
+    protected int computeHashCode() {
+        return Objects.hash(sourceArrow, targetArrow);
+    }
 }
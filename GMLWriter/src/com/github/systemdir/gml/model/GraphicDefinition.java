@@ -1,9 +1,12 @@
 package com.github.systemdir.gml.model;
 
+import com.github.systemdir.gml.io.GmlBuffer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 /**
  * Created by hess on 9/23/2015.
@@ -79,6 +82,18 @@ public abstract class GraphicDefinition {
     @NotNull
     protected Color lineColor;
 
+    // rendered gml, created on first use - definitions are immutable so the result never changes
+    @Nullable
+    private volatile String gmlWithLabel;
+    @Nullable
+    private volatile String gmlWithoutLabel;
+    @Nullable
+    private volatile byte[] bytesWithLabel;
+    @Nullable
+    private volatile byte[] bytesWithoutLabel;
+    // 0 means not yet computed
+    private int hash;
+
     protected GraphicDefinition(Builder builder) {
         this.lineColor=builder.lineColor;
         this.lineType = builder.lineType;
@@ -88,4 +103,156 @@ public abstract class GraphicDefinition {
         this.fontStyle = builder.fontStyle;
         this.labelColour = builder.labelColour;
     }
+
+    @Nullable
+    public Color getLabelBackground() {
+        return labelBackground;
+    }
+
+    @Nullable
+    public Integer getFontSize() {
+        return fontSize;
+    }
+
+    @Nullable
+    public Color getLabelColour() {
+        return labelColour;
+    }
+
+    /**
+     * @return the font style, null if not set which is the same as PLAIN
+     */
+    @Nullable
+    public FontStyle getFontStyle() {
+        return fontStyle;
+    }
+
+    @NotNull
+    public LineType getLineType() {
+        return lineType;
+    }
+
+    @Nullable
+    public Integer getLineWidth() {
+        return lineWidth;
+    }
+
+    @NotNull
+    public Color getLineColor() {
+        return lineColor;
+    }
+
+    /**
+     * Create GML for the element.
+     * <p>
+     * The result is rendered once per label mode and cached, so sharing one definition between many
+     * elements only costs the rendering once.
+     *
+     * @param printLabel add label formating informations
+     * @return gml string
+     */
+    public String toString(boolean printLabel) {
+        String gml = printLabel ? gmlWithLabel : gmlWithoutLabel;
+        if (gml == null) {
+            gml = new String(toBytes(printLabel), StandardCharsets.UTF_8);
+            if (printLabel) {
+                gmlWithLabel = gml;
+            } else {
+                gmlWithoutLabel = gml;
+            }
+        }
+        return gml;
+    }
+
+    /**
+     * UTF-8 encoded GML for the element, cached like {@link #toString(boolean)}.
+     * <p>
+     * The returned array is shared and must not be modified.
+     *
+     * @param printLabel add label formating informations
+     * @return gml bytes
+     */
+    public byte[] toBytes(boolean printLabel) {
+        byte[] gml = printLabel ? bytesWithLabel : bytesWithoutLabel;
+        if (gml == null) {
+            GmlBuffer buffer = new GmlBuffer(256);
+            render(buffer, printLabel);
+            gml = buffer.toByteArray();
+            if (printLabel) {
+                bytesWithLabel = gml;
+            } else {
+                bytesWithoutLabel = gml;
+            }
+        }
+        return gml;
+    }
+
+    /**
+     * Appends the GML for the element to out. Uses the cached GML if there is one, otherwise the definition is
+     * rendered straight into out without being cached, the cheapest way for definitions used only once.
+     *
+     * @param out buffer the gml is appended to
+     * @param printLabel add label formating informations
+     */
+    public void appendTo(GmlBuffer out, boolean printLabel) {
+        byte[] gml = cachedBytes(printLabel);
+        if (gml != null) {
+            out.append(gml);
+        } else {
+            render(out, printLabel);
+        }
+    }
+
+    /**
+     * @return the gml cached by {@link #toBytes(boolean)}, null if it was not rendered yet
+     */
+    @Nullable
+    protected byte[] cachedBytes(boolean printLabel) {
+        return printLabel ? bytesWithLabel : bytesWithoutLabel;
+    }
+
+    /**
+     * Definitions are equal when they render the same GML, see {@link GraphicDefinitionRegistry}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GraphicDefinition that = (GraphicDefinition) o;
+        return hashCode() == that.hashCode()
+                && Objects.equals(labelBackground, that.labelBackground)
+                && Objects.equals(fontSize, that.fontSize)
+                && Objects.equals(labelColour, that.labelColour)
+                && fontStyle == that.fontStyle
+                && lineType == that.lineType
+                && Objects.equals(lineWidth, that.lineWidth)
+                && Objects.equals(lineColor, that.lineColor);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Objects.hash(labelBackground, fontSize, labelColour, fontStyle, lineType, lineWidth, lineColor);
+            h = 31 * h + computeHashCode();
+            if (h == 0) {
+                h = 1;
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * @return hash code of the fields declared by the subclass
+     */
+    protected abstract int computeHashCode();
+
+    /**
+     * Renders the GML of this definition, see {@link #toBytes(boolean)} and {@link #appendTo(GmlBuffer, boolean)}
+     *
+     * @param out buffer the gml is appended to
+     * @param printLabel add label formating informations
+     */
+    protected abstract void render(GmlBuffer out, boolean printLabel);
 }
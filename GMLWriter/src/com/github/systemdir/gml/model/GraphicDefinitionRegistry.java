@@ -0,0 +1,39 @@
+package com.github.systemdir.gml.model;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns graphic definitions so structurally identical definitions collapse to one canonical instance.
+ * <p>
+ * As definitions cache their rendered GML (see {@link GraphicDefinition#toString(boolean)}), providers which
+ * create a new definition for every element only pay the rendering once per distinct style.
+ * <p>
+ * This class is thread safe, concurrent renderers share one registry.
+ */
+public class GraphicDefinitionRegistry {
+    private final Map<GraphicDefinition, GraphicDefinition> canonical = new ConcurrentHashMap<>();
+
+    /**
+     * @param definition the definition to intern, may be null
+     * @return the canonical instance equal to definition, or null if definition was null
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T extends GraphicDefinition> T intern(@Nullable T definition) {
+        if (definition == null) {
+            return null;
+        }
+        GraphicDefinition existing = canonical.putIfAbsent(definition, definition);
+        return existing != null ? (T) existing : definition;
+    }
+
+    /**
+     * @return amount of distinct definitions seen so far
+     */
+    public int size() {
+        return canonical.size();
+    }
+}
@@ -1,12 +1,14 @@
 package com.github.systemdir.gml.model;
 
-import com.github.systemdir.gml.YedGmlWriter;
+import com.github.systemdir.gml.io.GmlBuffer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.Objects;
 
-import static com.github.systemdir.gml.model.Tools.getHex;
+import static com.github.systemdir.gml.model.Tools.*;
 
 /**
  * Created by hess on 9/23/2015.
@@ -51,7 +53,10 @@ public class NodeGraphicDefinition extends GraphicDefinition {
         private @NotNull Form form;
         private @NotNull Color fill;
 
-        private @Nullable Rectangle position;
+        private @Nullable Double x;
+        private @Nullable Double y;
+        private @Nullable Double width;
+        private @Nullable Double height;
         private @Nullable Double topBorderInset;
         private @Nullable Double bottomBorderInset;
         private @Nullable Double leftBorderInset;
@@ -88,8 +93,42 @@ public class NodeGraphicDefinition extends GraphicDefinition {
             return this;
         }
         
+        /**
+         * @param position x and y are the center of the node as in GML, null to unset position and size
+         */
+        public Builder setPositionAndSize(@Nullable Rectangle2D position) {
+            if (position == null) {
+                x = y = width = height = null;
+            } else {
+                setPosition(position.getX(), position.getY());
+                setSize(position.getWidth(), position.getHeight());
+            }
+            return this;
+        }
+
+        /**
+         * Same as {@link #setPositionAndSize(Rectangle2D)}, kept for code compiled against earlier versions
+         */
         public Builder setPositionAndSize(@Nullable Rectangle position) {
-            this.position = position;
+            return setPositionAndSize((Rectangle2D) position);
+        }
+
+        /**
+         * @param x center of the node
+         * @param y center of the node
+         */
+        public Builder setPosition(double x, double y) {
+            this.x = x;
+            this.y = y;
+            return this;
+        }
+
+        /**
+         * Without size yED uses its default node size
+         */
+        public Builder setSize(double width, double height) {
+            this.width = width;
+            this.height = height;
             return this;
         }
 
@@ -118,7 +157,30 @@ public class NodeGraphicDefinition extends GraphicDefinition {
         }
     }
 
-    private Rectangle posAndSize;
+    // pre-encoded gml, see Tools
+    private static final byte[] X = key("x");
+    private static final byte[] Y = key("y");
+    private static final byte[] W = key("w");
+    private static final byte[] H = key("h");
+    private static final byte[] TYPE = quotedKey("type");
+    private static final byte[] FILL = quotedKey("fill");
+    private static final byte[] LINE = quotedKey("line");
+    private static final byte[] OUTLINE_STYLE = quotedKey("outlineStyle");
+    private static final byte[] OUTLINE_WIDTH = quotedKey("outlineWidth");
+    private static final byte[] TOP_BORDER_INSET = key("topBorderInset");
+    private static final byte[] BOTTOM_BORDER_INSET = key("bottomBorderInset");
+    private static final byte[] LEFT_BORDER_INSET = key("leftBorderInset");
+    private static final byte[] RIGHT_BORDER_INSET = key("rightBorderInset");
+    private static final byte[][] FORMS = encode(Form.values(), Enum::name);
+
+    @Nullable
+    private Double x;
+    @Nullable
+    private Double y;
+    @Nullable
+    private Double width;
+    @Nullable
+    private Double height;
     private Form form;
     
     @Nullable
@@ -140,65 +202,223 @@ public class NodeGraphicDefinition extends GraphicDefinition {
         
         
         this.lablePlacement = builder.labelPlacement;
-        this.posAndSize = builder.position;
+        this.x = builder.x;
+        this.y = builder.y;
+        this.width = builder.width;
+        this.height = builder.height;
         this.topBorderInset = builder.topBorderInset;
         this.bottomBorderInset = builder.bottomBorderInset;
         this.leftBorderInset = builder.leftBorderInset;
         this.rightBorderInset = builder.rightBorderInset;
     }
 
+    @NotNull
+    public Form getForm() {
+        return form;
+    }
+
+    @NotNull
+    public Color getFill() {
+        return fill;
+    }
+
+    /**
+     * @return center of the node as in GML, null if not set
+     */
+    @Nullable
+    public Double getX() {
+        return x;
+    }
+
+    /**
+     * @return center of the node as in GML, null if not set
+     */
+    @Nullable
+    public Double getY() {
+        return y;
+    }
+
+    @Nullable
+    public Double getWidth() {
+        return width;
+    }
+
+    @Nullable
+    public Double getHeight() {
+        return height;
+    }
+
+    @Nullable
+    public Double getTopBorderInset() {
+        return topBorderInset;
+    }
+
+    @Nullable
+    public Double getBottomBorderInset() {
+        return bottomBorderInset;
+    }
+
+    @Nullable
+    public Double getLeftBorderInset() {
+        return leftBorderInset;
+    }
+
+    @Nullable
+    public Double getRightBorderInset() {
+        return rightBorderInset;
+    }
+
+    @Nullable
+    public LabelPlacement getLabelPlacement() {
+        return lablePlacement;
+    }
+
     /**
      * Create GML for the node
+     * @param out buffer the gml is appended to
+     * @param printLabel add label formating informations
+     */
+    @Override
+    protected void render(GmlBuffer out, boolean printLabel) {
+        out.append(GRAPHICS_START);
+
+        if (x!=null) {
+            out.append(X).appendDouble(x).append(NEWLINE);
+        }
+        if (y!=null) {
+            out.append(Y).appendDouble(y).append(NEWLINE);
+        }
+        appendSize(out);
+
+        renderStyle(out, printLabel);
+    }
+
+    /**
+     * Appends the GML for the node placed at x/y instead of its own position, e.g. computed by a layout. The size
+     * of the definition is kept, without size yED uses its default.
+     * <p>
+     * Uses the cached GML (see {@link #toBytes(boolean)}) for everything but the position if there is one, otherwise
+     * the definition is rendered straight into out.
+     *
+     * @param out buffer the gml is appended to
      * @param printLabel add label formating informations
-     * @return gml string
+     * @param x center of the node
+     * @param y center of the node
      */
-    public String toString(boolean printLabel) {
-        StringBuilder stringBuilder=new StringBuilder();
-        stringBuilder.append(YedGmlWriter.tab2).append("graphics\n").append(YedGmlWriter.tab2).append("[\n");
+    public void appendTo(GmlBuffer out, boolean printLabel, double x, double y) {
+        out.append(GRAPHICS_START);
+        out.append(X).appendDouble(x).append(NEWLINE);
+        out.append(Y).appendDouble(y).append(NEWLINE);
+        appendSize(out);
+        appendStyle(out, printLabel);
+    }
 
-        if (posAndSize!=null) {
-            stringBuilder.append(YedGmlWriter.tab3).append("x").append(YedGmlWriter.tab1).append(posAndSize.getX()).append("\n");
-            stringBuilder.append(YedGmlWriter.tab3).append("y").append(YedGmlWriter.tab1).append(posAndSize.getY()).append("\n");
-            stringBuilder.append(YedGmlWriter.tab3).append("w").append(YedGmlWriter.tab1).append(posAndSize.getWidth()).append("\n");
-            stringBuilder.append(YedGmlWriter.tab3).append("h").append(YedGmlWriter.tab1).append(posAndSize.getHeight()).append("\n");
+    /**
+     * Appends the GML for the node placed at the given bounds instead of its own position and size, e.g. a group
+     * around its laid out members. See {@link #appendTo(GmlBuffer, boolean, double, double)}.
+     *
+     * @param out buffer the gml is appended to
+     * @param printLabel add label formating informations
+     * @param x center of the node
+     * @param y center of the node
+     * @param width width of the node
+     * @param height height of the node
+     */
+    public void appendTo(GmlBuffer out, boolean printLabel, double x, double y, double width, double height) {
+        out.append(GRAPHICS_START);
+        out.append(X).appendDouble(x).append(NEWLINE);
+        out.append(Y).appendDouble(y).append(NEWLINE);
+        out.append(W).appendDouble(width).append(NEWLINE);
+        out.append(H).appendDouble(height).append(NEWLINE);
+        appendStyle(out, printLabel);
+    }
+
+    private void appendSize(GmlBuffer out) {
+        if (width != null) {
+            out.append(W).appendDouble(width).append(NEWLINE);
+        }
+        if (height != null) {
+            out.append(H).appendDouble(height).append(NEWLINE);
         }
+    }
 
-        stringBuilder
-                .append(YedGmlWriter.tab3)
-                .append("type").append(YedGmlWriter.tab1).append("\"").append(form).append("\"").append("\n")
-                .append(YedGmlWriter.tab3)
-                .append("fill").append(YedGmlWriter.tab1).append("\"").append(getHex(fill)).append("\"").append("\n")
-                .append(YedGmlWriter.tab3)
-                .append("line").append(YedGmlWriter.tab1).append("\"").append(getHex(lineColor)).append("\"").append("\n");
+    /**
+     * Appends everything after the position, copied from the cached GML if there is one
+     */
+    private void appendStyle(GmlBuffer out, boolean printLabel) {
+        byte[] gml = cachedBytes(printLabel);
+        if (gml == null) {
+            renderStyle(out, printLabel);
+            return;
+        }
+        int start = GRAPHICS_START.length;
+        // skip the x, y, w and h lines that are set
+        int positionLines = (x != null ? 1 : 0) + (y != null ? 1 : 0) + (width != null ? 1 : 0) + (height != null ? 1 : 0);
+        for (int lines = 0; lines < positionLines; start++) {
+            if (gml[start] == '\n') {
+                lines++;
+            }
+        }
+        out.append(gml, start, gml.length - start);
+    }
+
+    private void renderStyle(GmlBuffer out, boolean printLabel) {
+        out.append(TYPE).append(FORMS[form.ordinal()]).append(QUOTE_END);
+        out.append(FILL);
+        appendHex(out, fill).append(QUOTE_END);
+        out.append(LINE);
+        appendHex(out, lineColor).append(QUOTE_END);
 
         if (lineType != LineType.NORMAL) {
-            stringBuilder.append(YedGmlWriter.tab3).append("outlineStyle").append(YedGmlWriter.tab1)
-                    .append("\"").append(lineType.name()).append("\"")
-                    .append("\n");
+            out.append(OUTLINE_STYLE).append(LINE_TYPES[lineType.ordinal()]).append(QUOTE_END);
         }
 
         if (lineWidth!=null) {
-            stringBuilder.append(YedGmlWriter.tab3).append("outlineWidth").append(YedGmlWriter.tab1).append("\"").append(lineWidth).append("\"").append("\n");
+            out.append(OUTLINE_WIDTH).appendInt(lineWidth).append(QUOTE_END);
         }
 
         if (topBorderInset!=null) {
-            stringBuilder.append(YedGmlWriter.tab3).append("topBorderInset").append(YedGmlWriter.tab1).append(topBorderInset).append("\n");
+            out.append(TOP_BORDER_INSET).appendDouble(topBorderInset).append(NEWLINE);
         }
         if (bottomBorderInset!=null) {
-            stringBuilder.append(YedGmlWriter.tab3).append("bottomBorderInset").append(YedGmlWriter.tab1).append(bottomBorderInset).append("\n");
+            out.append(BOTTOM_BORDER_INSET).appendDouble(bottomBorderInset).append(NEWLINE);
         }
         if (leftBorderInset!=null) {
-            stringBuilder.append(YedGmlWriter.tab3).append("leftBorderInset").append(YedGmlWriter.tab1).append(leftBorderInset).append("\n");
+            out.append(LEFT_BORDER_INSET).appendDouble(leftBorderInset).append(NEWLINE);
         }
         if (rightBorderInset!=null) {
-            stringBuilder.append(YedGmlWriter.tab3).append("rightBorderInset").append(YedGmlWriter.tab1).append(rightBorderInset).append("\n");
+            out.append(RIGHT_BORDER_INSET).appendDouble(rightBorderInset).append(NEWLINE);
         }
-        stringBuilder.append(YedGmlWriter.tab2).append("]\n");
+        out.append(BLOCK_END);
 
         if(printLabel)
-            stringBuilder.append(Tools.getLabelGraphics(labelColour,fontSize,fontStyle, labelBackground, lablePlacement, false));
-        
-        return stringBuilder.toString();
+            appendLabelGraphics(out, labelColour, fontSize, fontStyle, labelBackground, lablePlacement, false);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) return false;
+        NodeGraphicDefinition that = (NodeGraphicDefinition) o;
+        return form == that.form
+                && lablePlacement == that.lablePlacement
+                && Objects.equals(fill, that.fill)
+                && Objects.equals(x, that.x)
+                && Objects.equals(y, that.y)
+                && Objects.equals(width, that.width)
+                && Objects.equals(height, that.height)
+                && Objects.equals(topBorderInset, that.topBorderInset)
+                && Objects.equals(bottomBorderInset, that.bottomBorderInset)
+                && Objects.equals(leftBorderInset, that.leftBorderInset)
+                && Objects.equals(rightBorderInset, that.rightBorderInset);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    @Override
+    protected int computeHashCode() {
+        return Objects.hash(form, lablePlacement, fill, x, y, width, height, topBorderInset, bottomBorderInset, leftBorderInset, rightBorderInset);
+    }
 }
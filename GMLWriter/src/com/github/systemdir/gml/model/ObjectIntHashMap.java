@@ -0,0 +1,162 @@
+package com.github.systemdir.gml.model;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from objects to primitive ints.
+ * <p>
+ * Keys and values are stored in two flat arrays, so an entry costs no allocation besides the arrays themselves.
+ * Keys are compared either by equals/hashCode or by identity. Null keys are supported, removal is not.
+ * <p>
+ * This class is NOT thread safe. Concurrent reads are fine once all writes are completed and published.
+ */
+public class ObjectIntHashMap<K> {
+    private static final Object NULL_KEY = new Object();
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final boolean identity;
+    private final int missingValue;
+
+    private Object[] keys;
+    private int[] values;
+    private int size;
+    private int resizeAt;
+
+    /**
+     * @param identity true to compare keys by identity instead of equals
+     * @param missingValue the value returned for keys not in the map
+     */
+    public ObjectIntHashMap(boolean identity, int missingValue) {
+        this(identity, missingValue, 16);
+    }
+
+    /**
+     * @param identity true to compare keys by identity instead of equals
+     * @param missingValue the value returned for keys not in the map
+     * @param expectedSize amount of entries which fit in without resizing
+     */
+    public ObjectIntHashMap(boolean identity, int missingValue, int expectedSize) {
+        this.identity = identity;
+        this.missingValue = missingValue;
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * @return the value of key or the missing value passed to the constructor
+     */
+    public int get(@Nullable Object key) {
+        Object k = key == null ? NULL_KEY : key;
+        Object[] keys = this.keys;
+        int mask = keys.length - 1;
+        for (int i = hash(k) & mask; ; i = (i + 1) & mask) {
+            Object existing = keys[i];
+            if (existing == null) {
+                return missingValue;
+            }
+            if (matches(existing, k)) {
+                return values[i];
+            }
+        }
+    }
+
+    /**
+     * Sets the value of key
+     *
+     * @return the previous value or the missing value if key was not in the map
+     */
+    public int put(@Nullable K key, int value) {
+        return insert(key, value, true);
+    }
+
+    /**
+     * Sets the value of key if it is not in the map yet
+     *
+     * @return the existing value, or the missing value if value was inserted
+     */
+    public int putIfAbsent(@Nullable K key, int value) {
+        return insert(key, value, false);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entries, the table keeps its size
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    private int insert(@Nullable K key, int value, boolean replace) {
+        Object k = key == null ? NULL_KEY : key;
+        int mask = keys.length - 1;
+        int i = hash(k) & mask;
+        for (; ; i = (i + 1) & mask) {
+            Object existing = keys[i];
+            if (existing == null) {
+                break;
+            }
+            if (matches(existing, k)) {
+                int previous = values[i];
+                if (replace) {
+                    values[i] = value;
+                }
+                return previous;
+            }
+        }
+        keys[i] = k;
+        values[i] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    private boolean matches(Object existing, Object key) {
+        return existing == key || (!identity && existing.equals(key));
+    }
+
+    private int hash(Object key) {
+        int h = identity ? System.identityHashCode(key) : key.hashCode();
+        // spread the bits, linear probing suffers from clustered hash codes
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity <= 0) {
+            throw new IllegalStateException("ObjectIntHashMap too large");
+        }
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        int mask = newCapacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = hash(k) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new int[capacity];
+        resizeAt = (int) Math.min(capacity * (double) LOAD_FACTOR, capacity - 1);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long required = (long) Math.ceil(Math.max(expectedSize, 4) / (double) LOAD_FACTOR) + 1;
+        int capacity = Integer.highestOneBit((int) Math.min(required, 1 << 30));
+        return capacity < required ? capacity << 1 : capacity;
+    }
+}
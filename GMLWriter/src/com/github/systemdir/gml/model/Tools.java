@@ -1,68 +1,111 @@
 package com.github.systemdir.gml.model;
 
 import com.github.systemdir.gml.YedGmlWriter;
+import com.github.systemdir.gml.io.GmlBuffer;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
+import java.util.function.Function;
+
+import static com.github.systemdir.gml.io.GmlBuffer.ascii;
 
 /**
  * Created by Systemdir on 16/01/2017.
  */
 class Tools {
+    // pre-encoded gml of the graphic definitions
+    static final byte[] NEWLINE = ascii("\n");
+    static final byte[] QUOTE_END = ascii("\"\n");
+    static final byte[] GRAPHICS_START = ascii(YedGmlWriter.tab2 + "graphics\n" + YedGmlWriter.tab2 + "[\n");
+    static final byte[] BLOCK_END = ascii(YedGmlWriter.tab2 + "]\n");
+    static final byte[][] LINE_TYPES = encode(GraphicDefinition.LineType.values(), Enum::name);
+
+    private static final byte[] LABEL_GRAPHICS_START = ascii(YedGmlWriter.tab2 + "LabelGraphics\n" + YedGmlWriter.tab2 + "[\n");
+    private static final byte[] LABEL_COLOR = quotedKey("color");
+    private static final byte[] LABEL_FILL = quotedKey("fill");
+    private static final byte[] FONT_SIZE = key("fontSize");
+    private static final byte[] FONT_STYLE = quotedKey("fontStyle");
+    private static final byte[] ANCHOR = quotedKey("anchor");
+    private static final byte[] CENTERED = ascii(YedGmlWriter.tab3 + "model" + YedGmlWriter.tab1 + "\"centered\"\n"
+            + YedGmlWriter.tab3 + "position" + YedGmlWriter.tab1 + "\"center\"\n");
+    private static final byte[][] FONT_STYLES = encode(GraphicDefinition.FontStyle.values(), Enum::name);
+    private static final byte[][] LABEL_PLACEMENTS = encode(NodeGraphicDefinition.LabelPlacement.values(), NodeGraphicDefinition.LabelPlacement::getPlacementString);
+
+    /**
+     * @return the start of an attribute line, e.g. tab3 + "x" + tab1
+     */
+    static byte[] key(String name) {
+        return ascii(YedGmlWriter.tab3 + name + YedGmlWriter.tab1);
+    }
+
+    /**
+     * @return the start of a quoted attribute line, which is completed by {@link #QUOTE_END}
+     */
+    static byte[] quotedKey(String name) {
+        return ascii(YedGmlWriter.tab3 + name + YedGmlWriter.tab1 + "\"");
+    }
+
+    /**
+     * Encodes the gml representation of all constants of an enum, indexed by ordinal
+     */
+    static <T extends Enum<T>> byte[][] encode(T[] values, Function<T, String> representation) {
+        byte[][] encoded = new byte[values.length][];
+        for (T value : values) {
+            String text = representation.apply(value);
+            // null is printed as "null" like StringBuilder did
+            encoded[value.ordinal()] = ascii(String.valueOf(text));
+        }
+        return encoded;
+    }
+
     /**
      * Create GML for formatting labels
-     * @return gml string
      */
-    static String getLabelGraphics(@Nullable Color labelColour, @Nullable Integer fontSize, @Nullable GraphicDefinition.FontStyle fontStyle, @Nullable Color labelBackground, @Nullable NodeGraphicDefinition.LabelPlacement labelPlacement, boolean center) {
+    static void appendLabelGraphics(GmlBuffer out, @Nullable Color labelColour, @Nullable Integer fontSize, @Nullable GraphicDefinition.FontStyle fontStyle, @Nullable Color labelBackground, @Nullable NodeGraphicDefinition.LabelPlacement labelPlacement, boolean center) {
         if (labelColour != null || fontSize != null || (fontStyle != null && fontStyle != GraphicDefinition.FontStyle.PLAIN) || labelPlacement != null || center) {
-            StringBuilder stringBuilder=new StringBuilder();
-            
-            stringBuilder.append(YedGmlWriter.tab2).append("LabelGraphics\n").append(
-                    YedGmlWriter.tab2).append("[\n");
+            out.append(LABEL_GRAPHICS_START);
 
             if (labelColour != null) {
-                stringBuilder.append(YedGmlWriter.tab3).append("color").append(YedGmlWriter.tab1)
-                        .append("\"").append(getHex(labelColour)).append("\"").append("\n");
+                out.append(LABEL_COLOR);
+                appendHex(out, labelColour).append(QUOTE_END);
             }
 
             if (labelBackground != null) {
-                stringBuilder.append(YedGmlWriter.tab3).append("fill").append(YedGmlWriter.tab1)
-                        .append("\"").append(getHex(labelBackground)).append("\"").append("\n");
+                out.append(LABEL_FILL);
+                appendHex(out, labelBackground).append(QUOTE_END);
             }
 
             if (fontSize != null) {
-                stringBuilder.append(YedGmlWriter.tab3).append("fontSize").append(YedGmlWriter.tab1)
-                        .append(fontSize).append("\n");
+                out.append(FONT_SIZE).appendInt(fontSize).append(NEWLINE);
             }
 
             if (fontStyle != null && fontStyle != GraphicDefinition.FontStyle.PLAIN) {
-                stringBuilder.append(YedGmlWriter.tab3).append("fontStyle").append(YedGmlWriter.tab1)
-                        .append("\"").append(fontStyle.name()).append("\"").append("\n");
+                out.append(FONT_STYLE).append(FONT_STYLES[fontStyle.ordinal()]).append(QUOTE_END);
             }
 
             // used for labels on vertices
             if (labelPlacement != null) {
-                stringBuilder.append(YedGmlWriter.tab3).append("anchor").append(YedGmlWriter.tab1)
-                        .append("\"").append(labelPlacement.getPlacementString()).append("\"").append("\n");
+                out.append(ANCHOR).append(LABEL_PLACEMENTS[labelPlacement.ordinal()]).append(QUOTE_END);
             }
 
             // used for labels on edges
             if (center) {
-                stringBuilder.append(YedGmlWriter.tab3).append("model").append(YedGmlWriter.tab1).append("\"centered\"\n");
-                stringBuilder.append(YedGmlWriter.tab3).append("position").append(YedGmlWriter.tab1).append("\"center\"\n");
+                out.append(CENTERED);
             }
-            
-            stringBuilder.append(YedGmlWriter.tab2).append("]\n");
-            return stringBuilder.toString();
-        }else{
-            return "";
+
+            out.append(BLOCK_END);
         }
     }
 
     /**
-     * create rgba hex from a java color
+     * append rgba hex of a java color, e.g. #ff0000ff
      */
-    static String getHex(Color color) {
-        return String.format("#%02x%02x%02x%02x", color.getRed(), color.getGreen(), color.getBlue(), color.getAlpha());
+    static GmlBuffer appendHex(GmlBuffer out, Color color) {
+        int argb = color.getRGB();
+        return out.append((byte) '#')
+                .appendHexByte(argb >> 16)
+                .appendHexByte(argb >> 8)
+                .appendHexByte(argb)
+                .appendHexByte(argb >>> 24);
     }
 }
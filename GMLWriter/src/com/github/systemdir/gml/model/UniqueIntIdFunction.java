@@ -1,32 +1,45 @@
 package com.github.systemdir.gml.model;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * Creates a unique integer-based id for each object passed to the function.
  * <p>
- * Uniqueness of an object is determined by the equals, and hashCode funktion of the passed objects.
+ * Uniqueness of an object is determined by the equals, and hashCode funktion of the passed objects, or by identity
+ * if requested. The ids are kept in a primitive {@link ObjectIntHashMap}; {@link com.github.systemdir.gml.YedGmlWriter}
+ * uses {@link #applyAsInt(Object)} and writes the digits directly, so no Strings are created.
  * <p>
  * This class is NOT thread safe.
  *
  * @author Andreas Hofstadler, COREFT
  */
-public class UniqueIntIdFunction<T> implements Function<T, String> {
-    private Map<T, String> idMap = new HashMap<>();
+public class UniqueIntIdFunction<T> implements Function<T, String>, ToIntFunction<T> {
+    private final ObjectIntHashMap<T> idMap;
     private int nextId = 1;
 
+    public UniqueIntIdFunction() {
+        this(false);
+    }
+
+    /**
+     * @param identity true to tell objects apart by identity instead of equals
+     */
+    public UniqueIntIdFunction(boolean identity) {
+        idMap = new ObjectIntHashMap<>(identity, 0);
+    }
+
     @Override
-    public String apply(T t) {
-        String existing = idMap.get(t);
-        if (existing != null) {
+    public int applyAsInt(T t) {
+        int existing = idMap.putIfAbsent(t, nextId);
+        if (existing != 0) {
             return existing;
-        } else {
-            String id = String.valueOf(nextId);
-            nextId++;
-            idMap.put(t, id);
-            return id;
         }
+        return nextId++;
+    }
+
+    @Override
+    public String apply(T t) {
+        return String.valueOf(applyAsInt(t));
     }
 }